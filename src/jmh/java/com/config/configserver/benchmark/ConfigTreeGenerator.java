@@ -0,0 +1,87 @@
+package com.config.configserver.benchmark;
+
+import com.config.configserver.database.Row;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.config.configserver.service.ConfigLoadingService.DEFAULT_LABEL;
+
+/**
+ * Writes synthetic config trees shaped like configurations/: one folder per application holding a base file and
+ * profile files. Keys are three levels deep (group.section.property) so YAML nesting is exercised, and each
+ * profile overrides every tenth base key.
+ */
+public final class ConfigTreeGenerator {
+
+    public enum Format { yml, properties }
+
+    private ConfigTreeGenerator() {}
+
+    static Path createRoot() throws IOException {
+        return Files.createTempDirectory("config-bench-");
+    }
+
+    // configurations/{application}/application.{format} plus application-{profileN}.{format}
+    static Path writeApplication(final Path root, final String application, final int profiles, final int keys, final Format format) throws IOException {
+        final Path app = Files.createDirectories(root.resolve(application));
+        writeFile(app.resolve("application." + format), keys, 1, "base", format);
+        for(int p = 0; p < profiles; p++) {
+            writeFile(app.resolve("application-profile" + p + "." + format), keys, 10, "profile" + p, format);
+        }
+        return app;
+    }
+
+    // Rows as the loader would produce them, for seeding a database
+    static List<Row> rows(final String application, final int profiles, final int keys) {
+        final List<Row> rows = new ArrayList<>(profiles * keys);
+        for(int p = 0; p < profiles; p++) {
+            for(int k = 0; k < keys; k++) {
+                rows.add(new Row(application, "profile" + p, key(k), value(k, k % 10 == 0 ? "profile" + p : "base"), DEFAULT_LABEL));
+            }
+        }
+        return rows;
+    }
+
+    static String key(final int k) {
+        return "group" + (k / 1000) + ".section" + (k / 10 % 100) + ".property" + (k % 10);
+    }
+
+    private static String value(final int k, final String source) {
+        return "http://" + source + ".example.com/service/" + k;
+    }
+
+    // Every step-th key, with values tagged by source so overrides are visible
+    private static void writeFile(final Path file, final int keys, final int step, final String source, final Format format) throws IOException {
+        try(final BufferedWriter out = Files.newBufferedWriter(file)) {
+            if(format == Format.properties) {
+                for(int k = 0; k < keys; k += step) {
+                    out.write(key(k) + " = " + value(k, source));
+                    out.newLine();
+                }
+                return;
+            }
+            int group = -1;
+            int section = -1;
+            for(int k = 0; k < keys; k += step) {
+                if(k / 1000 != group) {
+                    group = k / 1000;
+                    section = -1;
+                    out.write("group" + group + ":");
+                    out.newLine();
+                }
+                if(k / 10 % 100 != section) {
+                    section = k / 10 % 100;
+                    out.write("  section" + section + ":");
+                    out.newLine();
+                }
+                out.write("    property" + (k % 10) + ": " + value(k, source));
+                out.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.config.configserver.benchmark;
+
+import com.config.configserver.service.ConfigLoadingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing an application folder into profile -> file, for folders with 10 to 1000 profile files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FetchProfilesBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int profiles;
+
+    private final ConfigLoadingService configLoadingService = new ConfigLoadingService(new SimpleMeterRegistry(), ConfigLoadingService.LOCATION);
+    private Path root;
+    private Path app;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = ConfigTreeGenerator.createRoot();
+        app = ConfigTreeGenerator.writeApplication(root, "benchService", profiles, 10, ConfigTreeGenerator.Format.yml);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public Map<String, Path> fetchProfiles() {
+        return configLoadingService.fetchProfiles(app);
+    }
+}
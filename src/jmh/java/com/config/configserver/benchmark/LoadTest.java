@@ -0,0 +1,341 @@
+package com.config.configserver.benchmark;
+
+import com.config.configserver.ConfigServerApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load test of the three ConfigController lookups. Boots the server on the default (H2) profile over a
+ * generated config tree, or targets a running one with url=, then sends requests at a fixed rate from a pool of
+ * clients. Request i is due at start + i/rate whatever happened to earlier requests, and its latency is measured
+ * from that due time, so a server that falls behind shows up as queueing in the percentiles rather than as a
+ * lower request rate (no coordinated omission).
+ * <pre>
+ * ./mvnw -Pjmh test-compile exec:exec -Djmh.main=com.config.configserver.benchmark.LoadTest -Djmh.args="rate=5000 duration=60"
+ * </pre>
+ * Options (name=value): rate (requests/s, 2000), duration (s, 60), warmup (s, 10), clients (64),
+ * mix (application:1,profile:8,key:1), applications (50), profiles (6), keys (2000), seed (42), gzip (false),
+ * url (none: boot the server), report (target/load-test/report.json). Names containing a dot are passed to the
+ * booted server as Spring properties, eg. config.serving.source=database.
+ * The report holds the settings, the commit, and per endpoint the counts, percentiles in microseconds and the
+ * compressed HdrHistogram (base64) so runs can be merged or re-plotted later.
+ */
+public final class LoadTest {
+
+    private static final String[] ENDPOINTS = {"application", "profile", "key"};
+
+    private final Map<String, String> options = new LinkedHashMap<>();
+    private final Map<String, String> springProperties = new LinkedHashMap<>();
+
+    private LoadTest(final String[] args) {
+        options.put("rate", "2000");
+        options.put("duration", "60");
+        options.put("warmup", "10");
+        options.put("clients", "64");
+        options.put("mix", "application:1,profile:8,key:1");
+        options.put("applications", "50");
+        options.put("profiles", "6");
+        options.put("keys", "2000");
+        options.put("seed", "42");
+        options.put("gzip", "false");
+        options.put("url", "");
+        options.put("report", "target/load-test/report.json");
+        for(String arg : args) {
+            final int split = arg.indexOf('=');
+            if(split < 0) {
+                throw new IllegalArgumentException("Expected name=value but got " + arg);
+            }
+            final String name = arg.substring(0, split);
+            if(name.contains(".")) {
+                springProperties.put(name, arg.substring(split + 1));
+            } else if(options.containsKey(name)) {
+                options.put(name, arg.substring(split + 1));
+            } else {
+                throw new IllegalArgumentException("Unknown option " + name + ", expected one of " + options.keySet());
+            }
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new LoadTest(args).run();
+    }
+
+    private void run() throws Exception {
+        final int applications = integer("applications");
+        final int profiles = integer("profiles");
+        final int keys = integer("keys");
+        Path tree = null;
+        ConfigurableApplicationContext server = null;
+        String url = options.get("url");
+        try {
+            if(url.isEmpty()) {
+                tree = ConfigTreeGenerator.createRoot();
+                for(int a = 0; a < applications; a++) {
+                    ConfigTreeGenerator.writeApplication(tree, "service" + a, profiles, keys, ConfigTreeGenerator.Format.yml);
+                }
+                server = boot(tree);
+                url = "http://localhost:" + server.getEnvironment().getProperty("local.server.port");
+            }
+            final Result result = drive(url, applications, profiles, keys);
+            final Path report = Paths.get(options.get("report"));
+            write(report, result);
+            System.out.printf("Report written to %s%n", report.toAbsolutePath());
+        } finally {
+            if(server != null) {
+                server.close();
+            }
+            if(tree != null) {
+                FileSystemUtils.deleteRecursively(tree);
+            }
+        }
+    }
+
+    private ConfigurableApplicationContext boot(final Path tree) {
+        final Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("config.loading.location", tree.toString());
+        properties.put("config.reload.enabled", "false");
+        properties.putAll(springProperties);
+        return new SpringApplicationBuilder(ConfigServerApplication.class)
+                .properties(properties)
+                .run();     // Returns once the startup load has published the snapshot
+    }
+
+    // Every client owns the requests i = client (mod clients); due times depend only on rate, the paths on seed and clients
+    private Result drive(final String url, final int applications, final int profiles, final int keys) throws InterruptedException {
+        final double rate = Double.parseDouble(options.get("rate"));
+        final int clients = integer("clients");
+        final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        final long warmupRequests = (long) (rate * integer("warmup"));
+        final long totalRequests = warmupRequests + (long) (rate * integer("duration"));
+        final int[] mix = mix(options.get("mix"));
+        final boolean gzip = Boolean.parseBoolean(options.get("gzip"));
+        final long seed = Long.parseLong(options.get("seed"));
+        final HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        final Client[] workers = new Client[clients];
+        final Thread[] threads = new Thread[clients];
+        final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        for(int c = 0; c < clients; c++) {
+            final Client client = new Client();
+            final int first = c;
+            final SplittableRandom random = new SplittableRandom(seed + c);
+            workers[c] = client;
+            threads[c] = new Thread(() -> {
+                for(long i = first; i < totalRequests; i += clients) {
+                    final long due = start + i * interval;
+                    final int endpoint = pick(mix, random);
+                    final String path = path(endpoint, random, applications, profiles, keys);
+                    final HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url + path)).timeout(Duration.ofSeconds(30));
+                    if(gzip) {
+                        request.header("Accept-Encoding", "gzip");
+                    }
+                    long now;
+                    while((now = System.nanoTime()) < due) {
+                        LockSupport.parkNanos(due - now);
+                    }
+                    if(now - due > TimeUnit.MILLISECONDS.toNanos(10)) {
+                        client.late++;
+                    }
+                    boolean ok;
+                    try {
+                        final int status = http.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+                        ok = status == 200 || status == 304;
+                    } catch (IOException e) {
+                        ok = false;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    if(i < warmupRequests) {
+                        continue;
+                    }
+                    final long latency = System.nanoTime() - due;
+                    if(ok) {
+                        client.latencies[endpoint].recordValue(TimeUnit.NANOSECONDS.toMicros(latency));
+                    } else {
+                        client.errors[endpoint]++;
+                    }
+                    client.lastCompletion = Math.max(client.lastCompletion, System.nanoTime());
+                }
+            }, "load-client-" + c);
+            threads[c].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        final Result result = new Result();
+        long end = start;
+        for(Client client : workers) {
+            for(int e = 0; e < ENDPOINTS.length; e++) {
+                result.latencies[e].add(client.latencies[e]);
+                result.errors[e] += client.errors[e];
+            }
+            result.late += client.late;
+            end = Math.max(end, client.lastCompletion);
+        }
+        result.measuredNanos = Math.max(1, end - (start + warmupRequests * interval));
+        return result;
+    }
+
+    private static String path(final int endpoint, final SplittableRandom random, final int applications, final int profiles, final int keys) {
+        final String application = "/config/service" + random.nextInt(applications);
+        if(endpoint == 0) {
+            return application;
+        }
+        final String profile = application + "/profile" + random.nextInt(profiles);
+        return endpoint == 1 ? profile : profile + "/" + ConfigTreeGenerator.key(random.nextInt(keys));
+    }
+
+    // Cumulative weights in ENDPOINTS order from "application:1,profile:8,key:1"
+    private static int[] mix(final String mix) {
+        final int[] weights = new int[ENDPOINTS.length];
+        for(String part : mix.split(",")) {
+            final String[] weight = part.trim().split(":");
+            final int endpoint = Arrays.asList(ENDPOINTS).indexOf(weight[0]);
+            if(endpoint < 0 || weight.length != 2) {
+                throw new IllegalArgumentException("Expected endpoint:weight with endpoint one of " + Arrays.toString(ENDPOINTS) + " but got " + part);
+            }
+            weights[endpoint] = Integer.parseInt(weight[1]);
+        }
+        for(int e = 1; e < weights.length; e++) {
+            weights[e] += weights[e - 1];
+        }
+        if(weights[weights.length - 1] <= 0) {
+            throw new IllegalArgumentException("Mix has no weight: " + mix);
+        }
+        return weights;
+    }
+
+    private static int pick(final int[] cumulative, final SplittableRandom random) {
+        final int roll = random.nextInt(cumulative[cumulative.length - 1]);
+        int endpoint = 0;
+        while(roll >= cumulative[endpoint]) {
+            endpoint++;
+        }
+        return endpoint;
+    }
+
+    private void write(final Path report, final Result result) throws IOException {
+        final Map<String, Object> json = new LinkedHashMap<>();
+        json.put("timestamp", Instant.now().toString());
+        json.put("commit", commit());
+        json.put("java", System.getProperty("java.version"));
+        json.put("processors", Runtime.getRuntime().availableProcessors());
+        json.put("settings", options);
+        json.put("springProperties", springProperties);
+        json.put("measuredSeconds", result.measuredNanos / 1e9);
+        json.put("lateRequests", result.late);    // Sent more than 10 ms after their due time: the client could not keep up
+        final Histogram total = new Histogram(3);
+        final Map<String, Object> endpoints = new LinkedHashMap<>();
+        for(int e = 0; e < ENDPOINTS.length; e++) {
+            total.add(result.latencies[e]);
+            endpoints.put(ENDPOINTS[e], summary(result.latencies[e], result.errors[e], result.measuredNanos));
+            print(ENDPOINTS[e], result.latencies[e], result.errors[e]);
+        }
+        final long errors = Arrays.stream(result.errors).sum();
+        json.put("total", summary(total, errors, result.measuredNanos));
+        json.put("endpoints", endpoints);
+        print("total", total, errors);
+        final Path parent = report.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report.toFile(), json);
+    }
+
+    private static Map<String, Object> summary(final Histogram latencies, final long errors, final long measuredNanos) {
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", latencies.getTotalCount() + errors);
+        summary.put("errors", errors);
+        summary.put("throughputPerSecond", (latencies.getTotalCount() + errors) * 1e9 / measuredNanos);
+        final Map<String, Object> micros = new LinkedHashMap<>();
+        micros.put("mean", latencies.getMean());
+        micros.put("p50", latencies.getValueAtPercentile(50));
+        micros.put("p90", latencies.getValueAtPercentile(90));
+        micros.put("p99", latencies.getValueAtPercentile(99));
+        micros.put("p99.9", latencies.getValueAtPercentile(99.9));
+        micros.put("p99.99", latencies.getValueAtPercentile(99.99));
+        micros.put("max", latencies.getMaxValue());
+        summary.put("latencyMicros", micros);
+        final ByteBuffer buffer = ByteBuffer.allocate(latencies.getNeededByteBufferCapacity());
+        final int length = latencies.encodeIntoCompressedByteBuffer(buffer);
+        summary.put("histogram", Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length)));
+        return summary;
+    }
+
+    private static void print(final String name, final Histogram latencies, final long errors) {
+        System.out.printf("%-12s %,10d ok %,8d errors   p50 %,8d  p99 %,8d  p99.9 %,8d  max %,8d us%n", name,
+                latencies.getTotalCount(), errors, latencies.getValueAtPercentile(50), latencies.getValueAtPercentile(99),
+                latencies.getValueAtPercentile(99.9), latencies.getMaxValue());
+    }
+
+    // Commit under test, so reports from different builds can be told apart
+    private static String commit() {
+        try {
+            final Process git = new ProcessBuilder("git", "rev-parse", "HEAD").redirectErrorStream(true).start();
+            try(final InputStream out = git.getInputStream()) {
+                final String head = new String(out.readAllBytes(), StandardCharsets.UTF_8).trim();
+                return git.waitFor() == 0 ? head : "unknown";
+            }
+        } catch (IOException e) {
+            return "unknown";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "unknown";
+        }
+    }
+
+    private int integer(final String option) {
+        return Integer.parseInt(options.get(option));
+    }
+
+    // Per client, so recording needs no synchronisation; merged once every client has finished
+    private static final class Client {
+        private final Histogram[] latencies = histograms();
+        private final long[] errors = new long[ENDPOINTS.length];
+        private long late;
+        private long lastCompletion = Long.MIN_VALUE;
+    }
+
+    private static final class Result {
+        private final Histogram[] latencies = histograms();
+        private final long[] errors = new long[ENDPOINTS.length];
+        private long late;
+        private long measuredNanos;
+    }
+
+    // Auto-resizing, 3 significant digits, microseconds
+    private static Histogram[] histograms() {
+        final Histogram[] histograms = new Histogram[ENDPOINTS.length];
+        for(int e = 0; e < histograms.length; e++) {
+            histograms[e] = new Histogram(3);
+        }
+        return histograms;
+    }
+}
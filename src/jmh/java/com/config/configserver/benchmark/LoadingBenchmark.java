@@ -0,0 +1,92 @@
+package com.config.configserver.benchmark;
+
+import com.config.configserver.service.ConfigLoadingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and merging of one application's files: YAML vs .properties at 10, 1k and 100k keys per profile.
+ * parseWithFactoryBeans is the loader used before ConfigFileParser (YamlPropertiesFactoryBean / PropertiesLoaderUtils
+ * copied into a HashMap), for comparison with loadPropertiesFromPath.
+ * Run with the gc profiler (the jmh profile's default) to see gc.alloc.rate.norm per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadingBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int keys;
+
+    @Param({"yml", "properties"})
+    public ConfigTreeGenerator.Format format;
+
+    private final ConfigLoadingService configLoadingService = new ConfigLoadingService(new SimpleMeterRegistry(), ConfigLoadingService.LOCATION);
+    private Path root;
+    private Path base;
+    private Path profile;
+    private Map<String, String> baseProperties;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = ConfigTreeGenerator.createRoot();
+        final Path app = ConfigTreeGenerator.writeApplication(root, "benchService", 1, keys, format);
+        base = app.resolve("application." + format);
+        profile = app.resolve("application-profile0." + format);
+        baseProperties = configLoadingService.loadPropertiesFromPath(base);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public Map<String, String> loadPropertiesFromPath() throws IOException {
+        return configLoadingService.loadPropertiesFromPath(base);
+    }
+
+    @Benchmark
+    public Map<String, String> parseWithFactoryBeans() throws IOException {
+        final Properties properties;
+        if(format == ConfigTreeGenerator.Format.properties) {
+            properties = PropertiesLoaderUtils.loadProperties(new FileSystemResource(base));
+        } else {
+            final YamlPropertiesFactoryBean factory = new YamlPropertiesFactoryBean();
+            factory.setResources(new FileSystemResource(base));
+            properties = factory.getObject();
+        }
+        final Map<String, String> result = new HashMap<>();
+        for(Object key : properties.keySet()) {
+            result.put(key.toString(), properties.get(key).toString());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Map<String, String> combineProperties() throws IOException {
+        return configLoadingService.combineProperties(baseProperties, profile);
+    }
+
+    // The merge combineProperties did before LayeredPropertyMap: a full copy of the base per profile
+    @Benchmark
+    public Map<String, String> combinePropertiesByCopy() throws IOException {
+        final Map<String, String> result = new HashMap<>(baseProperties);
+        result.putAll(configLoadingService.loadPropertiesFromPath(profile));
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+package com.config.configserver.benchmark;
+
+import com.config.configserver.database.Row;
+import com.config.configserver.database.RowChanges;
+import com.config.configserver.exception.ResultNotFoundException;
+import com.config.configserver.service.ConfigDatabaseService;
+import com.config.configserver.service.ConfigKey;
+import com.config.configserver.snapshot.ConfigSnapshot;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import liquibase.exception.LiquibaseException;
+import liquibase.integration.spring.SpringLiquibase;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.config.configserver.service.SqlStatements.APP_PROFILE_KEY_SQL;
+import static com.config.configserver.service.SqlStatements.APP_PROFILE_SQL;
+
+/**
+ * Lookup hot paths against an in-memory H2 database configured like the default profile:
+ * ConfigDatabaseService.streamConfiguration through the pool, and the in-memory snapshot for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int keys;
+
+    private HikariDataSource dataSource;
+    private ConfigDatabaseService configDatabaseService;
+    private ConfigSnapshot snapshot;
+    private String key;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, LiquibaseException {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:bench" + keys + ";DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=32");
+        dataSource.setUsername("sa");
+        dataSource.setPassword("password");
+        final SpringLiquibase liquibase = new SpringLiquibase();    // Same schema as the application, see spring.liquibase
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog("classpath:db/changelog/changelog.sql");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+        configDatabaseService = new ConfigDatabaseService(dataSource, new SimpleMeterRegistry(), 1000, 256, 8, 250, 262144);
+        final List<Row> rows = ConfigTreeGenerator.rows("benchService", 2, keys);
+        configDatabaseService.applyChanges(new RowChanges(rows, List.of(), List.of()));
+        snapshot = ConfigSnapshot.of(rows);
+        key = ConfigTreeGenerator.key(keys / 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public byte[] fetchProfileFromDatabase() throws SQLException, IOException, ResultNotFoundException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        configDatabaseService.streamConfiguration(out, APP_PROFILE_SQL, "benchService", "profile0");
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] fetchKeyFromDatabase() throws SQLException, IOException, ResultNotFoundException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        configDatabaseService.streamConfiguration(out, APP_PROFILE_KEY_SQL, "benchService", "profile0", key);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] fetchProfileFromSnapshot() throws ResultNotFoundException {
+        return snapshot.render(ConfigKey.of("benchService", "profile0"));
+    }
+
+    @Benchmark
+    public byte[] fetchKeyFromSnapshot() throws ResultNotFoundException {
+        return snapshot.render(ConfigKey.of("benchService", "profile0", key));
+    }
+}
@@ -0,0 +1,87 @@
+package com.config.configserver.benchmark;
+
+import com.config.configserver.service.ConfigLoadingService;
+import com.config.configserver.service.LayeredPropertyMap;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jol.info.GraphLayout;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.config.configserver.service.ConfigLoadingService.APPLICATION;
+
+/**
+ * Retained heap of every merged profile in a config tree: a HashMap copy of the base per profile (the merge before
+ * LayeredPropertyMap) against a LayeredPropertyMap per profile over one shared base. Sizes come from JOL, and the
+ * key and value Strings are the same objects in both, so the difference is the maps themselves.
+ * <pre>
+ * ./mvnw -Pjmh test-compile exec:exec -Djmh.main=com.config.configserver.benchmark.OverlayMemoryReport [-Djmh.args=configurations]
+ * </pre>
+ * Without a directory a tree is generated: 50 applications with 6 profiles of 2000 keys, each profile overriding
+ * every tenth key.
+ */
+public final class OverlayMemoryReport {
+
+    private OverlayMemoryReport() {}
+
+    public static void main(final String[] args) throws IOException {
+        final Path root = args.length > 0 ? Paths.get(args[0]) : generate();
+        try {
+            report(root);
+        } finally {
+            if(args.length == 0) {
+                FileSystemUtils.deleteRecursively(root);
+            }
+        }
+    }
+
+    private static void report(final Path root) throws IOException {
+        final ConfigLoadingService loader = new ConfigLoadingService(new SimpleMeterRegistry(), ConfigLoadingService.LOCATION);
+        final List<Map<String, String>> copies = new ArrayList<>();
+        final List<Map<String, String>> layered = new ArrayList<>();
+        long entries = 0;
+        for(Path app : applications(root)) {
+            final Map<String, Path> profiles = loader.fetchProfiles(app);
+            final Map<String, String> base = Collections.unmodifiableMap(loader.loadPropertiesFromPath(profiles.remove(APPLICATION)));
+            for(Path profile : profiles.values()) {
+                final Map<String, String> overrides = loader.loadPropertiesFromPath(profile);
+                final Map<String, String> copy = new HashMap<>(base);
+                copy.putAll(overrides);
+                copies.add(copy);
+                layered.add(new LayeredPropertyMap(base, overrides));
+                entries += copy.size();
+            }
+        }
+        final long copyBytes = GraphLayout.parseInstance(copies).totalSize();
+        final long layeredBytes = GraphLayout.parseInstance(layered).totalSize();
+        System.out.printf("%s: %d profiles, %d merged entries%n", root, copies.size(), entries);
+        System.out.printf("copied:  %,d bytes%n", copyBytes);
+        System.out.printf("layered: %,d bytes%n", layeredBytes);
+        System.out.printf("saved:   %,d bytes (%.1f%%)%n", copyBytes - layeredBytes,
+                copyBytes == 0 ? 0.0 : 100.0 * (copyBytes - layeredBytes) / copyBytes);
+    }
+
+    private static Path generate() throws IOException {
+        final Path root = ConfigTreeGenerator.createRoot();
+        for(int a = 0; a < 50; a++) {
+            ConfigTreeGenerator.writeApplication(root, "service" + a, 6, 2000, ConfigTreeGenerator.Format.yml);
+        }
+        return root;
+    }
+
+    private static List<Path> applications(final Path root) throws IOException {
+        try(final Stream<Path> list = Files.list(root)) {
+            return list.filter(Files::isDirectory).collect(Collectors.toList());
+        }
+    }
+}
@@ -1,14 +1,24 @@
 package com.config.configserver;
 
+import com.config.configserver.database.RowChanges;
+import com.config.configserver.database.SourceDigest;
 import com.config.configserver.service.ConfigLoadingService;
 import com.config.configserver.service.ConfigDatabaseService;
+import com.config.configserver.service.ConfigReloadService;
+import com.config.configserver.service.ConfigReloadService.PendingSync;
+import com.config.configserver.snapshot.ConfigSnapshotStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cloud.config.server.EnableConfigServer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import springfox.documentation.builders.PathSelectors;
 import springfox.documentation.builders.RequestHandlerSelectors;
@@ -16,13 +26,25 @@ import springfox.documentation.spi.DocumentationType;
 import springfox.documentation.spring.web.plugins.Docket;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-
-import static com.config.configserver.service.ConfigLoadingService.APPLICATION;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 @EnableSwagger2
+@EnableConfigServer     // Spring Cloud Config protocol, served by SnapshotEnvironmentRepository
 @SpringBootApplication
 public class ConfigServerApplication {
 
@@ -46,10 +68,35 @@ class ConfigService {
 	private final Logger LOGGER = LoggerFactory.getLogger(ConfigService.class);
 	private final ConfigLoadingService configLoadingService;
 	private final ConfigDatabaseService configDatabaseService;
+	private final ConfigReloadService configReloadService;
+	private final ConfigSnapshotStore configSnapshotStore;
+	private final Counter loaded;
+	private final Counter unchanged;
+	private final Counter failed;
+	private final boolean parallel;
+	private final int parserThreads;
+	private final int writerThreads;
 
-	public ConfigService(final ConfigLoadingService configLoadingService, final ConfigDatabaseService configDatabaseService) {
+	public ConfigService(
+			final ConfigLoadingService configLoadingService,
+			final ConfigDatabaseService configDatabaseService,
+			final ConfigReloadService configReloadService,
+			final ConfigSnapshotStore configSnapshotStore,
+			final MeterRegistry meterRegistry,
+			@Value("${config.loading.parallel:false}")     final boolean parallel,
+			@Value("${config.loading.parser-threads:4}")   final int parserThreads,
+			@Value("${config.loading.writer-threads:2}")   final int writerThreads
+	) {
 		this.configLoadingService = configLoadingService;
 		this.configDatabaseService = configDatabaseService;
+		this.configReloadService = configReloadService;
+		this.configSnapshotStore = configSnapshotStore;
+		this.loaded = applicationCounter(meterRegistry, "loaded");
+		this.unchanged = applicationCounter(meterRegistry, "unchanged");
+		this.failed = applicationCounter(meterRegistry, "failed");
+		this.parallel = parallel;
+		this.parserThreads = parserThreads;
+		this.writerThreads = writerThreads;
 	}
 
 	/**
@@ -63,37 +110,155 @@ class ConfigService {
 	 //  LABEL = "latest"
 	 //  PROP_KEY = Map key
 	 //  VALUE = Corresponding value
+	 // Applications whose files match their stored digests (SOURCE_DIGESTS) are skipped;
+	 // changed ones only write the rows that differ from what is stored
+	 // A snapshot file saved by the previous load (config.snapshot.path) is served while this one runs
 	 */
 	@EventListener(ContextRefreshedEvent.class) // After Bean creation, before server starts
 	public void doEverything() {
 		LOGGER.info("###########################################################");
 		LOGGER.info("###################### LOADING ############################");
 		LOGGER.info("###########################################################");
+		if(configSnapshotStore.restore()) {
+			LOGGER.info("Serving the saved config snapshot until the load completes");
+		}
+		final long start = System.nanoTime();
+		final LoadStats stats = new LoadStats();
 		final List<Path> applications = configLoadingService.fetchApplications();
-		for(Path app : applications) {
-			final Map<String, Path> profiles = configLoadingService.fetchProfiles(app);  // Map of profile : app config file
-			try {
-				final Map<String, String> baseProperties = configLoadingService.loadPropertiesFromPath(profiles.get(APPLICATION));
-				profiles.remove(APPLICATION);
-				for(Map.Entry<String, Path> profile : profiles.entrySet()) { // For each profile
-					final Map<String, String> combinedProperties = configLoadingService.combineProperties(baseProperties, profile.getValue());
-					for(String property : combinedProperties.keySet()) { // For each property
-						boolean result = configDatabaseService.insertIntoDatabase(
-								app.getFileName().toString(),       // The Application name
-								profile.getKey(),                   // Profile name
-								property,                           // Property
-								combinedProperties.get(property)    // Value of specified property
-						);
-						LOGGER.info("Insert succeeded: {}", result);
-					}
+		final Map<String, List<SourceDigest>> digests = fetchDigests();
+		if(parallel) {
+			loadInParallel(applications, digests, stats);
+		} else {
+			for(Path app : applications) {
+				try {
+					persist(parse(app, digests, stats), stats);
+				} catch (Exception e) {
+					failed.increment();
+					LOGGER.error("Error while loading config ...: ", e);
 				}
-			} catch (Exception e) {
-				LOGGER.error("Error while loading config ...: ", e);
 			}
 		}
+		removeMissingApplications(applications, digests.keySet());
+		final long totalNanos = System.nanoTime() - start;
+		final long totalRows = stats.rows.sum();
+		LOGGER.info("Wrote {} rows for {} applications ({} unchanged) in {} ms (parse {} ms, persist {} ms, {} rows/sec)",
+				totalRows, applications.size(), stats.unchanged.sum(), toMillis(totalNanos), toMillis(stats.parseNanos.sum()),
+				toMillis(stats.persistNanos.sum()), totalNanos == 0 ? 0 : totalRows * TimeUnit.SECONDS.toNanos(1) / totalNanos);
+		try {
+			configSnapshotStore.rebuild();
+		} catch (SQLException e) {
+			LOGGER.error("Unable to build config snapshot, lookups will be served from the database: ", e);
+		}
 		LOGGER.info("###########################################################");
 		LOGGER.info("###################### COMPLETE ###########################");
 		LOGGER.info("###########################################################");
 	}
 
+	// Parsing fans out over parserThreads; persistence is limited to writerThreads concurrent transactions.
+	// At most parserThreads + 2 * writerThreads applications are in flight, so parsed rows cannot pile up ahead of the database.
+	private void loadInParallel(final List<Path> applications, final Map<String, List<SourceDigest>> digests, final LoadStats stats) {
+		final ExecutorService parsers = Executors.newFixedThreadPool(parserThreads, new CustomizableThreadFactory("config-parser-"));
+		final ExecutorService writers = Executors.newFixedThreadPool(writerThreads, new CustomizableThreadFactory("config-writer-"));
+		final Semaphore inFlight = new Semaphore(parserThreads + 2 * writerThreads);
+		try {
+			final List<CompletableFuture<Void>> loads = new ArrayList<>(applications.size());
+			for(Path app : applications) {
+				inFlight.acquireUninterruptibly();
+				loads.add(CompletableFuture
+						.supplyAsync(() -> {
+							try {
+								return parse(app, digests, stats);
+							} catch (IOException e) {
+								throw new UncheckedIOException(e);
+							}
+						}, parsers)
+						.thenAcceptAsync(pending -> {
+							try {
+								persist(pending, stats);
+							} catch (SQLException e) {
+								throw new CompletionException(e);
+							}
+						}, writers)
+						.whenComplete((ignored, e) -> {
+							inFlight.release();
+							if(e != null) {
+								failed.increment();
+								LOGGER.error("Error while loading config for {} ...: ", app.getFileName(), e);
+							}
+						}));
+			}
+			CompletableFuture.allOf(loads.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+		} finally {
+			parsers.shutdown();
+			writers.shutdown();
+		}
+	}
+
+	// Null when the application's files are unchanged since the stored digests
+	private PendingSync parse(final Path app, final Map<String, List<SourceDigest>> digests, final LoadStats stats) throws IOException {
+		final long start = System.nanoTime();
+		final PendingSync pending = configReloadService.prepare(app, digests.getOrDefault(app.getFileName().toString(), List.of()));
+		stats.parseNanos.add(System.nanoTime() - start);
+		if(pending == null) {
+			stats.unchanged.increment();
+			unchanged.increment();
+		}
+		return pending;
+	}
+
+	private void persist(final PendingSync pending, final LoadStats stats) throws SQLException {
+		if(pending == null) {
+			return;
+		}
+		final long start = System.nanoTime();
+		final RowChanges changes = configReloadService.apply(pending);
+		final long persistNanos = System.nanoTime() - start;
+		stats.persistNanos.add(persistNanos);
+		stats.rows.add(changes.size());
+		loaded.increment();
+		LOGGER.debug("Wrote {} rows for {} (persist {} ms)", changes.size(), pending.application(), toMillis(persistNanos));
+	}
+
+	private Map<String, List<SourceDigest>> fetchDigests() {
+		try {
+			return configDatabaseService.fetchAllDigests();
+		} catch (SQLException e) {
+			LOGGER.error("Unable to read source digests, every application will be parsed: ", e);
+			return Map.of();
+		}
+	}
+
+	// Applications loaded on a previous boot whose folder has since been removed
+	private void removeMissingApplications(final List<Path> applications, final Set<String> loadedBefore) {
+		final Set<String> present = applications.stream().map(app -> app.getFileName().toString()).collect(Collectors.toSet());
+		for(String application : loadedBefore) {
+			if(!present.contains(application)) {
+				try {
+					configReloadService.removeApplication(application);
+				} catch (SQLException e) {
+					LOGGER.error("Error while removing config for {} ...: ", application, e);
+				}
+			}
+		}
+	}
+
+	private static Counter applicationCounter(final MeterRegistry meterRegistry, final String result) {
+		return Counter.builder("config.load.applications")
+				.description("Applications processed by the startup load")
+				.tag("result", result)
+				.register(meterRegistry);
+	}
+
+	private static long toMillis(final long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	// Accumulated across loader threads
+	private static class LoadStats {
+		final LongAdder parseNanos = new LongAdder();
+		final LongAdder persistNanos = new LongAdder();
+		final LongAdder rows = new LongAdder();
+		final LongAdder unchanged = new LongAdder();
+	}
+
 }
\ No newline at end of file
@@ -1,49 +1,95 @@
 package com.config.configserver.api;
 
+import com.config.configserver.database.Row;
+import com.config.configserver.service.ConfigBatchService;
+import com.config.configserver.service.ConfigCache;
 import com.config.configserver.service.ConfigDatabaseService;
+import com.config.configserver.service.ConfigKey;
+import com.config.configserver.service.KeyPattern;
 import com.config.configserver.exception.ResultNotFoundException;
+import com.config.configserver.snapshot.ConfigJson;
+import com.config.configserver.snapshot.ConfigSnapshot;
+import com.config.configserver.snapshot.ConfigSnapshotStore;
+import com.config.configserver.snapshot.ContentHash;
+import com.config.configserver.snapshot.Representation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.List;
 
-import static com.config.configserver.service.SqlStatements.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Key: application/environment/key
  * eg. aService/dev/otherServiceURI
  *     aService/qa/otherServiceURI
+ *     aService/qa?keys=spring.datasource.*   (glob over keys, answered from the sorted keys of the profile)
+ *     aService/qa?since=8071524603.42        (only the keys changed since that revision, see fetchConfigChanges)
+ * Every result carries a strong ETag; a matching If-None-Match gets 304 Not Modified.
+ * The exception is a database lookup too large to cache (config.cache.max-entry-bytes), which is streamed without one.
+ * Lookups negotiate their representation: Accept: application/cbor gets CBOR, and Accept-Encoding: gzip gets
+ * application and profile results gzipped once per snapshot and kept with it. Before the snapshot is published
+ * results come from the database as JSON (CBOR is converted from it, as it streams for results too large to cache;
+ * gzip is not applied).
+ * A database lookup that cannot get a connection or a bulkhead permit in time is 503 with Retry-After, so clients
+ * back off instead of queueing on a saturated database.
  */
 @RestController
 public class ConfigController {
 
+    private static final String CBOR = "application/cbor";     // Representation.CBOR
+    private static final String VARY = HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING;
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final ConfigSnapshotStore configSnapshotStore;
+    private final ConfigCache configCache;
     private final ConfigDatabaseService configDatabaseService;
+    private final ConfigBatchService configBatchService;
+    private final int maxBatchLookups;
 
-    public ConfigController(final ConfigDatabaseService configDatabaseService) {
+    public ConfigController(
+            final ConfigSnapshotStore configSnapshotStore,
+            final ConfigCache configCache,
+            final ConfigDatabaseService configDatabaseService,
+            final ConfigBatchService configBatchService,
+            @Value("${config.batch.max-lookups:1000}") final int maxBatchLookups
+    ) {
+        this.configSnapshotStore = configSnapshotStore;
+        this.configCache = configCache;
         this.configDatabaseService = configDatabaseService;
+        this.configBatchService = configBatchService;
+        this.maxBatchLookups = maxBatchLookups;
     }
 
     /**
      * Return all config across all environments (as defined by profiles) for this application
      *  Key: config/{application}
      * @param application Application or Service
-     * @return ResponseEntity<String>
+     * @param request Web request, for If-None-Match and for streaming results too large to cache
+     * @return ResponseEntity<byte[]>
      */
-    @GetMapping(value = "/config/{application}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> fetchConfig(
-            @PathVariable final String application
+    @GetMapping(value = "/config/{application}", produces = {MediaType.APPLICATION_JSON_VALUE, CBOR})
+    public ResponseEntity<byte[]> fetchConfig(
+            @PathVariable final String application,
+            final ServletWebRequest request
     ) {
-        try {
-            return ResponseEntity.ok(configDatabaseService.fetchConfiguration(APP_SQL, application));
-        } catch (SQLException e) {
-            return ResponseEntity.internalServerError().body("Please check parameters");
-        } catch (ResultNotFoundException e) {
-            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
-        }
+        return serve(ConfigKey.of(application), request);
     }
 
     /**
@@ -51,22 +97,83 @@ public class ConfigController {
      *  Key: config/{application}/{profile}
      * @param application Application or Service
      * @param profile Environment (Spring Profile)
-     * @return ResponseEntity<String>
+     * @param request Web request, for If-None-Match and for streaming results too large to cache
+     * @return ResponseEntity<byte[]>
+     */
+    @GetMapping(value = "/config/{application}/{profile}", produces = {MediaType.APPLICATION_JSON_VALUE, CBOR})
+    public ResponseEntity<byte[]> fetchConfig(
+            @PathVariable final String application,
+            @PathVariable final String profile,
+            final ServletWebRequest request
+    ) {
+        return serve(ConfigKey.of(application, profile), request);
+    }
+
+    /**
+     * Return the config in the provided environment (profile) whose keys match a glob, eg. the subtree spring.datasource.*
+     *  Key: config/{application}/{profile}?keys={glob}
+     * @param application Application or Service
+     * @param profile Environment (Spring Profile)
+     * @param keys Glob over property keys: * any characters (dots included), ? one character
+     * @param request Web request, for If-None-Match and content negotiation
+     * @return ResponseEntity<byte[]>
      */
-    @GetMapping(value = "/config/{application}/{profile}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> fetchConfig(
+    @GetMapping(value = "/config/{application}/{profile}", params = "keys", produces = {MediaType.APPLICATION_JSON_VALUE, CBOR})
+    public ResponseEntity<byte[]> fetchConfigMatching(
             @PathVariable final String application,
-            @PathVariable final String profile
+            @PathVariable final String profile,
+            @RequestParam final String keys,
+            final ServletWebRequest request
     ) {
+        final KeyPattern pattern = KeyPattern.of(keys);
+        final Representation representation = negotiate(request).forKeyLookup();
         try {
-            return ResponseEntity.ok(configDatabaseService.fetchConfiguration(APP_PROFILE_SQL, application, profile));
+            final byte[] json = configSnapshotStore.isServing()
+                    ? configSnapshotStore.current().renderMatching(application, profile, pattern)
+                    : fromDatabase(application, profile, pattern);
+            final String etag = representation.etag(ContentHash.of(json));
+            if(request.checkNotModified(etag)) {
+                return null;
+            }
+            return ok(representation, etag, ConfigJson.encode(json, representation));
+        } catch (SQLTransientException e) {
+            return unavailable();
         } catch (SQLException e) {
-            return ResponseEntity.internalServerError().body("Please check parameters");
+            return ResponseEntity.internalServerError().body("Please check parameters".getBytes(UTF_8));
         } catch (ResultNotFoundException e) {
-            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+            return new ResponseEntity<>(e.getMessage().getBytes(UTF_8), HttpStatus.NOT_FOUND);
         }
     }
 
+    /**
+     * Return the changes to the config in the provided environment (profile) since the client's revision: rows added
+     * or changed and keys removed, or every row (full: true) when the server no longer holds those changes.
+     * The response carries the revision to send next time; start with since=0. A revision issued before the server
+     * last rebuilt its snapshot (or restarted) is answered with every row. Answered from the in-memory snapshot
+     * in either serving mode, so 503 until it is first published.
+     *  Key: config/{application}/{profile}?since={revision}
+     * @param application Application or Service
+     * @param profile Environment (Spring Profile)
+     * @param since Revision from the client's last response
+     * @return ResponseEntity<byte[]>
+     */
+    @GetMapping(value = "/config/{application}/{profile}", params = {"since", "!keys"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> fetchConfigChanges(
+            @PathVariable final String application,
+            @PathVariable final String profile,
+            @RequestParam final String since
+    ) {
+        if(!configSnapshotStore.isPublished()) {
+            return unavailable();
+        }
+        try {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(configSnapshotStore.renderChanges(application, profile, since));
+        } catch (ResultNotFoundException e) {
+            return new ResponseEntity<>(e.getMessage().getBytes(UTF_8), HttpStatus.NOT_FOUND);
+        }
+    }
 
     /**
      * Return all config in the provided environment (profile) for this application
@@ -74,21 +181,119 @@ public class ConfigController {
      * @param application Application or Service
      * @param profile Environment (Spring Profile)
      * @param key Property Key
-     * @return ResponseEntity<String>
+     * @param request Web request, for If-None-Match and for streaming results too large to cache
+     * @return ResponseEntity<byte[]>
      */
-    @GetMapping(value = "/config/{application}/{profile}/{key}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> fetchConfig(
+    @GetMapping(value = "/config/{application}/{profile}/{key}", produces = {MediaType.APPLICATION_JSON_VALUE, CBOR})
+    public ResponseEntity<byte[]> fetchConfig(
             @PathVariable final String application,
             @PathVariable final String profile,
-            @PathVariable final String key
+            @PathVariable final String key,
+            final ServletWebRequest request
     ) {
+        return serve(ConfigKey.of(application, profile, key), request);
+    }
+
+    /**
+     * Resolve many lookups in one request; each result carries its own status so missing lookups do not fail the batch
+     *  Key: config/batch
+     * @param lookups application, optional profile and optional key of each lookup
+     * @return ResponseEntity<byte[]>
+     */
+    @PostMapping(value = "/config/batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> fetchConfigBatch(
+            @RequestBody final List<ConfigKey> lookups
+    ) {
+        if(lookups.size() > maxBatchLookups) {
+            return ResponseEntity.badRequest().body(("At most " + maxBatchLookups + " lookups per batch").getBytes(UTF_8));
+        }
         try {
-            return ResponseEntity.ok(configDatabaseService.fetchConfiguration(APP_PROFILE_KEY_SQL, application, profile, key));
-        } catch (SQLException e) {
-            return ResponseEntity.internalServerError().body("Please check parameters");
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            configBatchService.writeBatch(lookups, out);
+            return ResponseEntity.ok(out.toByteArray());
+        } catch (SQLTransientException e) {
+            return unavailable();
+        } catch (SQLException | IOException e) {
+            return ResponseEntity.internalServerError().body("Please check parameters".getBytes(UTF_8));
+        }
+    }
+
+    // Serve from the in-memory snapshot once it is published, otherwise from the database through the cache.
+    // The snapshot knows each ETag up front, so a 304 there costs neither a query nor a render.
+    private ResponseEntity<byte[]> serve(final ConfigKey key, final ServletWebRequest request) {
+        final Representation negotiated = negotiate(request);
+        try {
+            if(configSnapshotStore.isServing()) {
+                final Representation representation = key.key() == null ? negotiated : negotiated.forKeyLookup();
+                final ConfigSnapshot snapshot = configSnapshotStore.current();
+                final String etag = snapshot.etag(key, representation);
+                if(etag != null && request.checkNotModified(etag)) {
+                    return null;    // 304 already written by checkNotModified
+                }
+                final byte[] body = snapshot.render(key, representation);   // Throws when not found, so etag is set from here on
+                return ok(representation, etag, body);
+            }
+            final Representation representation = negotiated == Representation.CBOR ? Representation.CBOR : Representation.JSON;
+            final byte[] json = configCache.fetchConfiguration(key, () -> streamTo(request.getResponse(), representation));
+            if(json == null) {
+                return null;    // Too large to buffer, already streamed by the cache
+            }
+            final String etag = representation.etag(ContentHash.of(json));
+            if(request.checkNotModified(etag)) {
+                return null;
+            }
+            return ok(representation, etag, ConfigJson.encode(json, representation));
+        } catch (SQLTransientException e) {
+            return unavailable();   // Raised before a connection is held, so nothing has been streamed yet
+        } catch (SQLException | IOException e) {
+            if(request.getResponse().isCommitted()) {
+                throw new IllegalStateException("Failed part way through streaming " + key.path(), e);
+            }
+            return ResponseEntity.internalServerError().body("Please check parameters".getBytes(UTF_8));
         } catch (ResultNotFoundException e) {
-            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+            return new ResponseEntity<>(e.getMessage().getBytes(UTF_8), HttpStatus.NOT_FOUND);
+        }
+    }
+
+    // Pattern lookups are not cached: each is a different subtree, and the snapshot serves them once it is published
+    private byte[] fromDatabase(final String application, final String profile, final KeyPattern pattern)
+            throws SQLException, ResultNotFoundException {
+        final List<Row> rows = configDatabaseService.fetchMatchingRows(application, profile, pattern);
+        if(rows.isEmpty()) {
+            throw new ResultNotFoundException(application + "/" + profile + "?keys=" + pattern);
         }
+        return ConfigJson.renderRows(rows);
+    }
+
+    private static Representation negotiate(final ServletWebRequest request) {
+        request.getResponse().setHeader(HttpHeaders.VARY, VARY);    // Also on 304s
+        return Representation.negotiate(request.getHeader(HttpHeaders.ACCEPT), request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    private static ResponseEntity<byte[]> ok(final Representation representation, final String etag, final byte[] body) {
+        final ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(representation.contentType());
+        if(representation.contentEncoding() != null) {
+            response.header(HttpHeaders.CONTENT_ENCODING, representation.contentEncoding());
+        }
+        return response.body(body);
+    }
+
+    // No connection or bulkhead permit in time (the database is saturated), or no snapshot yet: not the request's fault
+    private static ResponseEntity<byte[]> unavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(("Busy, retry after " + RETRY_AFTER_SECONDS + "s").getBytes(UTF_8));
+    }
+
+    // JSON or CBOR (converted as it streams); no ETag, as it is only known once the whole body has been sent
+    private static OutputStream streamTo(final HttpServletResponse response, final Representation representation) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(representation.contentType().toString());
+        return representation == Representation.CBOR
+                ? ConfigJson.cborEncoding(response.getOutputStream())
+                : response.getOutputStream();
     }
 
 }
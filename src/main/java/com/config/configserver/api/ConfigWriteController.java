@@ -0,0 +1,135 @@
+package com.config.configserver.api;
+
+import com.config.configserver.database.Row;
+import com.config.configserver.service.ConfigWriteService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import static com.config.configserver.service.ConfigLoadingService.DEFAULT_LABEL;
+import static com.config.configserver.service.ConfigWriteService.API_LABEL;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes to the properties served by ConfigController.
+ *  Key: config/{application}/{profile}/{key}?label={label}   (label defaults to "api")
+ * Writes are answered 204 once committed and visible to lookups; requests arriving together share one commit
+ * (see ConfigWriteService). While the write queue is full or the database is saturated the answer is 503 with
+ * Retry-After.
+ * The loader's label ("latest") belongs to the files: a reload deletes every key under it that the files do not
+ * define, so writes under it are refused with 400 rather than silently lost on the next edit.
+ */
+@RestController
+public class ConfigWriteController {
+
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final ConfigWriteService configWriteService;
+
+    public ConfigWriteController(final ConfigWriteService configWriteService) {
+        this.configWriteService = configWriteService;
+    }
+
+    /**
+     * Set one property
+     * @param application Application or Service
+     * @param profile Environment (Spring Profile)
+     * @param key Property Key
+     * @param label Label to write under
+     * @param value New value, the whole request body
+     * @return DeferredResult<ResponseEntity<byte[]>>
+     */
+    @PutMapping(value = "/config/{application}/{profile}/{key}")
+    public DeferredResult<ResponseEntity<byte[]>> putProperty(
+            @PathVariable final String application,
+            @PathVariable final String profile,
+            @PathVariable final String key,
+            @RequestParam(defaultValue = API_LABEL) final String label,
+            @RequestBody final String value
+    ) {
+        return write(List.of(new Row(application, profile, key, value, label)));
+    }
+
+    /**
+     * Remove one property; removing a key that is not stored still answers 204
+     * @param application Application or Service
+     * @param profile Environment (Spring Profile)
+     * @param key Property Key
+     * @param label Label to remove it from
+     * @return DeferredResult<ResponseEntity<byte[]>>
+     */
+    @DeleteMapping(value = "/config/{application}/{profile}/{key}")
+    public DeferredResult<ResponseEntity<byte[]>> deleteProperty(
+            @PathVariable final String application,
+            @PathVariable final String profile,
+            @PathVariable final String key,
+            @RequestParam(defaultValue = API_LABEL) final String label
+    ) {
+        return write(List.of(new Row(application, profile, key, null, label)));
+    }
+
+    /**
+     * Set and remove many properties of one profile in one commit
+     * @param application Application or Service
+     * @param profile Environment (Spring Profile)
+     * @param label Label to write under
+     * @param properties Key to new value; a null value removes the key
+     * @return DeferredResult<ResponseEntity<byte[]>>
+     */
+    @PostMapping(value = "/config/{application}/{profile}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<byte[]>> writeProperties(
+            @PathVariable final String application,
+            @PathVariable final String profile,
+            @RequestParam(defaultValue = API_LABEL) final String label,
+            @RequestBody final Map<String, String> properties
+    ) {
+        if(properties.isEmpty()) {
+            return badRequest("No properties to write");
+        }
+        final List<Row> rows = new ArrayList<>(properties.size());
+        properties.forEach((key, value) -> rows.add(new Row(application, profile, key, value, label)));
+        return write(rows);
+    }
+
+    // Every row of a request has the same label
+    private DeferredResult<ResponseEntity<byte[]>> write(final List<Row> rows) {
+        if(DEFAULT_LABEL.equals(rows.get(0).LABEL())) {
+            return badRequest("Label " + DEFAULT_LABEL + " is written by the file loader only");
+        }
+        final DeferredResult<ResponseEntity<byte[]>> result = new DeferredResult<>();
+        configWriteService.write(rows).whenComplete((done, failure) -> result.setResult(failure == null
+                ? ResponseEntity.noContent().build()
+                : failed(failure instanceof CompletionException ? failure.getCause() : failure)));
+        return result;
+    }
+
+    private static DeferredResult<ResponseEntity<byte[]>> badRequest(final String reason) {
+        final DeferredResult<ResponseEntity<byte[]>> result = new DeferredResult<>();
+        result.setResult(ResponseEntity.badRequest().body(reason.getBytes(UTF_8)));
+        return result;
+    }
+
+    private static ResponseEntity<byte[]> failed(final Throwable failure) {
+        if(failure instanceof SQLTransientException) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .body(("Database busy, retry after " + RETRY_AFTER_SECONDS + "s").getBytes(UTF_8));
+        }
+        return ResponseEntity.internalServerError().body("Write failed, nothing was changed".getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,64 @@
+package com.config.configserver.api;
+
+import com.config.configserver.service.ConfigKey;
+import com.config.configserver.service.ConfigWatchService;
+import com.config.configserver.snapshot.Representation;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+/**
+ * Long-poll alternative to polling ConfigController.
+ *  Key: watch/{application}/{profile}
+ * Send the ETag you hold as If-None-Match; a gzip or CBOR ETag counts as the ETag of its JSON. The request is
+ * answered as soon as the config differs from it (200 with the new config and ETag), or with 304 Not Modified once
+ * the timeout passes. Then watch again.
+ */
+@RestController
+public class WatchController {
+
+    private final ConfigWatchService configWatchService;
+
+    public WatchController(final ConfigWatchService configWatchService) {
+        this.configWatchService = configWatchService;
+    }
+
+    /**
+     * Wait for the config in the provided environment (profile) for this application to change
+     * @param application Application or Service
+     * @param profile Environment (Spring Profile)
+     * @param etag ETag currently held by the client, if any
+     * @param timeout Milliseconds to wait before answering 304
+     * @return DeferredResult<ResponseEntity<byte[]>>
+     */
+    @GetMapping(value = "/watch/{application}/{profile}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<byte[]>> watchConfig(
+            @PathVariable final String application,
+            @PathVariable final String profile,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String etag,
+            @RequestParam(value = "timeout", defaultValue = "30000") final long timeout
+    ) {
+        return configWatchService.watch(ConfigKey.of(application, profile), unquote(etag), timeout);
+    }
+
+    // "abc", W/"abc" or "abc-gzip" -> abc
+    private static String unquote(final String etag) {
+        if(etag == null || etag.isBlank()) {
+            return null;
+        }
+        String value = etag.trim();
+        if(value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        if(value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        return Representation.baseEtag(value);
+    }
+}
@@ -0,0 +1,50 @@
+package com.config.configserver.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Rows to insert, update (new VALUE) and delete to turn one set of rows into another.
+ * Rows are matched on APPLICATION, PROFILE, LABEL and PROP_KEY.
+ */
+public record RowChanges(List<Row> inserted, List<Row> updated, List<Row> deleted) {
+
+    public static final RowChanges NONE = new RowChanges(List.of(), List.of(), List.of());
+
+    public static RowChanges diff(final Collection<Row> stored, final Collection<Row> loaded) {
+        final Map<RowId, Row> remaining = new HashMap<>(stored.size() * 2);
+        for(Row row : stored) {
+            remaining.put(RowId.of(row), row);
+        }
+        final List<Row> inserted = new ArrayList<>();
+        final List<Row> updated = new ArrayList<>();
+        for(Row row : loaded) {
+            final Row previous = remaining.remove(RowId.of(row));
+            if(previous == null) {
+                inserted.add(row);
+            } else if(!Objects.equals(previous.VALUE(), row.VALUE())) {
+                updated.add(row);
+            }
+        }
+        return new RowChanges(inserted, updated, new ArrayList<>(remaining.values()));
+    }
+
+    public boolean isEmpty() {
+        return inserted.isEmpty() && updated.isEmpty() && deleted.isEmpty();
+    }
+
+    public int size() {
+        return inserted.size() + updated.size() + deleted.size();
+    }
+
+    // Identity of a stored property: rows with the same RowId are one key, whatever their VALUE
+    public record RowId(String APPLICATION, String PROFILE, String LABEL, String PROP_KEY) {
+        public static RowId of(final Row row) {
+            return new RowId(row.APPLICATION(), row.PROFILE(), row.LABEL(), row.PROP_KEY());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.config.configserver.database;
+
+/**
+ * Fingerprint of something the loader read, stored in SOURCE_DIGESTS.
+ * KIND FILE: a config file, NAME is the file name, SIZE in bytes, MODIFIED in epoch millis.
+ * KIND PROFILE: a merged profile result, NAME is the profile, SIZE is the row count and MODIFIED is unused.
+ */
+public record SourceDigest(
+        String APPLICATION,
+        String KIND,
+        String NAME,
+        long SIZE,
+        long MODIFIED,
+        String HASH) {
+
+    public static final String FILE = "file";
+    public static final String PROFILE = "profile";
+}
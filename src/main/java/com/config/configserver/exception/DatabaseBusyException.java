@@ -0,0 +1,11 @@
+package com.config.configserver.exception;
+
+import java.sql.SQLTransientConnectionException;
+
+// No database permit became free in time; transient, like the pool's own connection timeout, so callers answer 503
+public class DatabaseBusyException extends SQLTransientConnectionException {
+
+    public DatabaseBusyException(String reason) {
+        super(reason);
+    }
+}
@@ -0,0 +1,59 @@
+package com.config.configserver.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Flattens .yml and .properties config files straight into a Map of key : value.
+ * Entries are the same as YamlPropertiesFactoryBean and PropertiesLoaderUtils give (what ConfigLoadingService used
+ * before), but no intermediate document, Properties or LinkedHashMap is built on the way.
+ * Keys are interned: the same keys recur in the base and every profile file of an application.
+ */
+public final class ConfigFileParser {
+
+    private static final long MAP_THRESHOLD = 64 * 1024;    // Smaller files are cheaper to read than to map
+
+    private ConfigFileParser() {}
+
+    /**
+     * @param path .yml or .properties file
+     * @param target Map to put the flattened entries into; later entries overwrite earlier ones with the same key
+     * @return false when a YAML file uses something only the full loader handles (anchors, aliases, explicit tags,
+     *         timestamps, non-string keys, ...). target may then hold some of the file's entries.
+     */
+    public static boolean parse(final Path path, final Map<String, String> target) throws IOException {
+        return switch(extension(path)) {
+            case "properties" -> {
+                PropertiesFlattener.flatten(read(path), target);
+                yield true;
+            }
+            case "yml" -> YamlFlattener.flatten(path, target);
+            default -> throw new IllegalArgumentException("Unable to load unfamiliar file type");
+        };
+    }
+
+    private static String extension(final Path path) {
+        final String name = path.getFileName().toString();
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    // Large files are memory-mapped, small ones read into a heap buffer
+    private static ByteBuffer read(final Path path) throws IOException {
+        try(final FileChannel channel = FileChannel.open(path, READ)) {
+            final long size = channel.size();
+            if(size >= MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while(buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read until full or end of file
+            }
+            return buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.config.configserver.parser;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Reads a .properties file exactly like java.util.Properties.load(InputStream): ISO-8859-1, '#'/'!' comments,
+ * backslash line continuations, '=', ':' or whitespace separators and \\uXXXX escapes.
+ * Logical lines are assembled in one reused char buffer and each key and value becomes a single String.
+ */
+final class PropertiesFlattener {
+
+    private final ByteBuffer in;
+    private char[] line = new char[256];
+    private final StringBuilder converted = new StringBuilder();
+
+    private PropertiesFlattener(final ByteBuffer in) {
+        this.in = in;
+    }
+
+    static void flatten(final ByteBuffer in, final Map<String, String> target) {
+        new PropertiesFlattener(in).flattenInto(target);
+    }
+
+    private void flattenInto(final Map<String, String> target) {
+        int limit;
+        while((limit = readLine()) >= 0) {
+            int keyLen = 0;
+            int valueStart = limit;
+            boolean hasSep = false;
+            boolean precedingBackslash = false;
+            while(keyLen < limit) {
+                final char c = line[keyLen];
+                if((c == '=' || c == ':') && !precedingBackslash) {
+                    valueStart = keyLen + 1;
+                    hasSep = true;
+                    break;
+                } else if((c == ' ' || c == '\t' || c == '\f') && !precedingBackslash) {
+                    valueStart = keyLen + 1;
+                    break;
+                }
+                precedingBackslash = c == '\\' && !precedingBackslash;
+                keyLen++;
+            }
+            while(valueStart < limit) {
+                final char c = line[valueStart];
+                if(c != ' ' && c != '\t' && c != '\f') {
+                    if(!hasSep && (c == '=' || c == ':')) {
+                        hasSep = true;
+                    } else {
+                        break;
+                    }
+                }
+                valueStart++;
+            }
+            target.put(convert(0, keyLen).intern(), convert(valueStart, limit - valueStart));
+        }
+    }
+
+    // Next logical line into line[0, length), or -1 at the end of the input. Port of the JDK 17 Properties.LineReader
+    private int readLine() {
+        int len = 0;
+        boolean skipWhiteSpace = true;
+        boolean appendedLineBegin = false;
+        boolean precedingBackslash = false;
+        while(true) {
+            if(!in.hasRemaining()) {
+                if(len == 0) {
+                    return -1;
+                }
+                return precedingBackslash ? len - 1 : len;
+            }
+            final char c = (char) (in.get() & 0xff);   // ISO-8859-1
+            if(skipWhiteSpace) {
+                if(c == ' ' || c == '\t' || c == '\f') {
+                    continue;
+                }
+                if(!appendedLineBegin && (c == '\r' || c == '\n')) {
+                    continue;
+                }
+                skipWhiteSpace = false;
+                appendedLineBegin = false;
+            }
+            if(len == 0 && (c == '#' || c == '!')) {   // Comment: skip to the end of the line
+                if(!skipComment()) {
+                    return -1;
+                }
+                skipWhiteSpace = true;
+                continue;
+            }
+            if(c != '\n' && c != '\r') {
+                if(len == line.length) {
+                    line = Arrays.copyOf(line, len * 2);
+                }
+                line[len++] = c;
+                precedingBackslash = c == '\\' && !precedingBackslash;
+            } else if(len == 0) {
+                skipWhiteSpace = true;
+            } else if(!in.hasRemaining()) {
+                return precedingBackslash ? len - 1 : len;
+            } else if(precedingBackslash) {   // Continuation: drop the backslash and the next line's leading whitespace
+                len -= 1;
+                skipWhiteSpace = true;
+                appendedLineBegin = true;
+                precedingBackslash = false;
+                if(c == '\r' && in.get(in.position()) == '\n') {
+                    in.get();
+                }
+            } else {
+                return len;
+            }
+        }
+    }
+
+    // Consume the rest of a comment line including its line break; false at the end of the input
+    private boolean skipComment() {
+        while(in.hasRemaining()) {
+            final byte b = in.get();
+            if(b == '\r' || b == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Unescape line[off, off + len). Port of Properties.loadConvert
+    private String convert(int off, final int len) {
+        final int end = off + len;
+        final int start = off;
+        while(off < end && line[off] != '\\') {
+            off++;
+        }
+        if(off == end) {
+            return new String(line, start, len);
+        }
+        converted.setLength(0);
+        converted.append(line, start, off - start);
+        while(off < end) {
+            char c = line[off++];
+            if(c == '\\') {
+                c = line[off++];
+                if(c == 'u') {
+                    if(off > end - 4) {
+                        throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                    }
+                    int value = 0;
+                    for(int i = 0; i < 4; i++) {
+                        final int digit = Character.digit(line[off++], 16);
+                        if(digit < 0) {
+                            throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                        }
+                        value = (value << 4) + digit;
+                    }
+                    converted.append((char) value);
+                } else {
+                    converted.append(switch(c) {
+                        case 't' -> '\t';
+                        case 'r' -> '\r';
+                        case 'n' -> '\n';
+                        case 'f' -> '\f';
+                        default -> c;
+                    });
+                }
+            } else {
+                converted.append(c);
+            }
+        }
+        return converted.toString();
+    }
+}
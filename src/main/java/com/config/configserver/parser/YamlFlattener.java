@@ -0,0 +1,224 @@
+package com.config.configserver.parser;
+
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Flattens YAML from SnakeYAML's parser events, the way YamlPropertiesFactoryBean flattens the loaded documents:
+ * nested keys are joined with '.', sequence items get [n], empty sequences and null values become "", and
+ * later documents overwrite earlier ones. No node graph or per-mapping LinkedHashMap is built; each nesting level's
+ * prefix is built once and shared by all of its children.
+ * Plain scalars are resolved and converted like SafeConstructor does for str, null, bool, int and float. Anything
+ * else (anchors, aliases, explicit tags, merge keys, timestamps, non-string or duplicate keys, non-mapping documents)
+ * makes flatten return false so the caller can use the full loader.
+ */
+final class YamlFlattener {
+
+    private static final Resolver RESOLVER = new Resolver();
+
+    private final Parser parser;
+    private final Map<String, String> target;
+    private final List<Set<String>> keysByDepth = new ArrayList<>();   // Reused to detect duplicate keys per mapping
+
+    private YamlFlattener(final Parser parser, final Map<String, String> target) {
+        this.parser = parser;
+        this.target = target;
+    }
+
+    static boolean flatten(final Path path, final Map<String, String> target) throws IOException {
+        try(final Reader reader = new UnicodeReader(Files.newInputStream(path))) {
+            return new YamlFlattener(new ParserImpl(new StreamReader(reader)), target).documents();
+        }
+    }
+
+    private boolean documents() {
+        parser.getEvent(); // StreamStart
+        while(!parser.checkEvent(Event.ID.StreamEnd)) {
+            parser.getEvent(); // DocumentStart
+            final Event root = parser.getEvent();
+            if(root instanceof MappingStartEvent start && plain(start)) {
+                if(!mapping("", 0)) {
+                    return false;
+                }
+            } else if(!(root instanceof ScalarEvent scalar && Tag.NULL.equals(tag(scalar)))) {
+                return false;   // Scalar or sequence document, flattened under "document" by the full loader
+            }
+            parser.getEvent(); // DocumentEnd
+        }
+        return true;
+    }
+
+    // Children of the mapping just started, up to and including its end
+    private boolean mapping(final String prefix, final int depth) {
+        final Set<String> keys = keysAt(depth);
+        while(!parser.checkEvent(Event.ID.MappingEnd)) {
+            if(!(parser.getEvent() instanceof ScalarEvent key) || !Tag.STR.equals(tag(key))) {
+                return false;
+            }
+            if(!keys.add(key.getValue()) || !value(child(prefix, key.getValue()), depth + 1)) {
+                return false;
+            }
+        }
+        parser.getEvent(); // MappingEnd
+        return true;
+    }
+
+    // Items of the sequence just started, up to and including its end
+    private boolean sequence(final String prefix, final int depth) {
+        if(parser.checkEvent(Event.ID.SequenceEnd)) {
+            target.put(prefix.intern(), "");
+        }
+        for(int index = 0; !parser.checkEvent(Event.ID.SequenceEnd); index++) {
+            if(!value(child(prefix, "[" + index + "]"), depth)) {
+                return false;
+            }
+        }
+        parser.getEvent(); // SequenceEnd
+        return true;
+    }
+
+    private boolean value(final String key, final int depth) {
+        final Event event = parser.getEvent();
+        if(event instanceof ScalarEvent scalar) {
+            final String value = convert(scalar);
+            if(value == null) {
+                return false;
+            }
+            target.put(key.intern(), value);
+            return true;
+        }
+        if(event instanceof MappingStartEvent start && plain(start)) {
+            return mapping(key, depth);
+        }
+        if(event instanceof SequenceStartEvent start && plain(start)) {
+            return sequence(key, depth);
+        }
+        return false;   // Alias, or an anchored/tagged collection
+    }
+
+    private Set<String> keysAt(final int depth) {
+        if(keysByDepth.size() == depth) {
+            keysByDepth.add(new HashSet<>());
+        }
+        final Set<String> keys = keysByDepth.get(depth);
+        keys.clear();
+        return keys;
+    }
+
+    // YamlProcessor.buildFlattenedMap: "[n]" keys attach without a '.', and a blank prefix is dropped
+    private static String child(final String prefix, final String name) {
+        if(prefix.isBlank()) {
+            return name;
+        }
+        return name.startsWith("[") ? prefix + name : prefix + '.' + name;
+    }
+
+    private static boolean plain(final CollectionStartEvent event) {
+        return event.getAnchor() == null && event.getTag() == null;
+    }
+
+    // Tag as the Composer would assign it; null for anchored scalars and explicit tags other than !!str
+    private static Tag tag(final ScalarEvent scalar) {
+        if(scalar.getAnchor() != null) {
+            return null;
+        }
+        final String tag = scalar.getTag();
+        if(tag == null || "!".equals(tag)) {
+            return RESOLVER.resolve(NodeId.scalar, scalar.getValue(), scalar.getImplicit().canOmitTagInPlainScalar());
+        }
+        return Tag.STR.getValue().equals(tag) ? Tag.STR : null;
+    }
+
+    // Value as Properties.get(key).toString() gives it after YamlPropertiesFactoryBean; null when unsupported
+    private static String convert(final ScalarEvent scalar) {
+        final Tag tag = tag(scalar);
+        final String value = scalar.getValue();
+        if(Tag.STR.equals(tag)) {
+            return value;
+        } else if(Tag.NULL.equals(tag)) {
+            return "";
+        } else if(Tag.BOOL.equals(tag)) {
+            return switch(value.toLowerCase()) {
+                case "yes", "true", "on" -> "true";
+                default -> "false";
+            };
+        } else if(Tag.INT.equals(tag)) {
+            return integer(value);
+        } else if(Tag.FLOAT.equals(tag)) {
+            return decimal(value);
+        }
+        return null;
+    }
+
+    // SafeConstructor.ConstructYamlInt, minus sexagesimal (1:30) which is left to the full loader
+    private static String integer(final String scalar) {
+        String value = scalar.replace("_", "");
+        if(value.isEmpty() || value.indexOf(':') != -1) {
+            return null;
+        }
+        final boolean negative = value.charAt(0) == '-';
+        if(negative || value.charAt(0) == '+') {
+            value = value.substring(1);
+        }
+        int radix = 10;
+        if(value.startsWith("0b")) {
+            value = value.substring(2);
+            radix = 2;
+        } else if(value.startsWith("0x")) {
+            value = value.substring(2);
+            radix = 16;
+        } else if(value.startsWith("0") && value.length() > 1) {
+            value = value.substring(1);
+            radix = 8;
+        }
+        try {
+            return new BigInteger(negative ? "-" + value : value, radix).toString();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // SafeConstructor.ConstructYamlFloat, minus sexagesimal
+    private static String decimal(final String scalar) {
+        String value = scalar.replace("_", "");
+        if(value.isEmpty() || value.indexOf(':') != -1) {
+            return null;
+        }
+        final boolean negative = value.charAt(0) == '-';
+        if(negative || value.charAt(0) == '+') {
+            value = value.substring(1);
+        }
+        final String lower = value.toLowerCase();
+        if(".inf".equals(lower)) {
+            return Double.toString(negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+        } else if(".nan".equals(lower)) {
+            return Double.toString(Double.NaN);
+        }
+        try {
+            return Double.toString(Double.parseDouble(value) * (negative ? -1 : 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
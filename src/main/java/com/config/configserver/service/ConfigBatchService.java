@@ -0,0 +1,158 @@
+package com.config.configserver.service;
+
+import com.config.configserver.database.Row;
+import com.config.configserver.snapshot.ConfigJson;
+import com.config.configserver.snapshot.ConfigSnapshotStore;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Resolves many lookups into one JSON document:
+ * {"results":[{"application":"aService","profile":"dev","key":null,"status":200,"config":[...rows...]}, ...]}
+ * Each lookup carries its own status (200, 400 or 404), so one missing lookup does not fail the batch; a null lookup
+ * in the request is a 400 with every field null.
+ * Lookups are answered from the snapshot when it is serving, otherwise from one query covering every application,
+ * whose rows are written straight out in the snapshot's order rather than built into a snapshot first.
+ */
+@Service
+public class ConfigBatchService {
+
+    private static final ConfigKey NO_LOOKUP = new ConfigKey(null, null, null);
+
+    private final ConfigSnapshotStore configSnapshotStore;
+    private final ConfigDatabaseService configDatabaseService;
+
+    public ConfigBatchService(final ConfigSnapshotStore configSnapshotStore, final ConfigDatabaseService configDatabaseService) {
+        this.configSnapshotStore = configSnapshotStore;
+        this.configDatabaseService = configDatabaseService;
+    }
+
+    public void writeBatch(final List<ConfigKey> lookups, final OutputStream out) throws SQLException, IOException {
+        final RowSource source = configSnapshotStore.isServing() ? configSnapshotStore.current()::writeRows : fromDatabase(lookups);
+        try(final JsonGenerator generator = ConfigJson.generator(out)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("results");
+            for(ConfigKey requested : lookups) {
+                final ConfigKey lookup = requested == null ? NO_LOOKUP : requested;    // null in the request body
+                generator.writeStartObject();
+                generator.writeStringField("application", lookup.application());
+                generator.writeStringField("profile", lookup.profile());
+                generator.writeStringField("key", lookup.key());
+                if(!isValid(lookup)) {
+                    generator.writeNumberField("status", 400);
+                } else {
+                    // Status is only known once the rows are written, so it follows the config array
+                    generator.writeArrayFieldStart("config");
+                    final boolean found = source.writeRows(lookup, generator);
+                    generator.writeEndArray();
+                    generator.writeNumberField("status", found ? 200 : 404);
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    // A key needs a profile, and every lookup needs an application
+    private static boolean isValid(final ConfigKey lookup) {
+        return lookup != null && lookup.application() != null && (lookup.key() == null || lookup.profile() != null);
+    }
+
+    // Rows of just the applications the batch asks for, read with a single query
+    private RowSource fromDatabase(final List<ConfigKey> lookups) throws SQLException {
+        final Set<String> applications = new LinkedHashSet<>();
+        for(ConfigKey lookup : lookups) {
+            if(isValid(lookup)) {
+                applications.add(lookup.application());
+            }
+        }
+        if(applications.isEmpty()) {
+            return (lookup, generator) -> false;
+        }
+        return new DatabaseRows(configDatabaseService.fetchApplicationRows(applications));
+    }
+
+    @FunctionalInterface
+    private interface RowSource {
+        // Write the rows of the lookup without the enclosing array; false when it has no result
+        boolean writeRows(ConfigKey lookup, JsonGenerator generator) throws IOException;
+    }
+
+    // Rows grouped like ConfigSnapshot: profiles by name, each sorted by key then label, so the output is the same
+    private static final class DatabaseRows implements RowSource {
+        private static final Comparator<Row> ORDER = Comparator.comparing(Row::PROP_KEY).thenComparing(Row::LABEL);
+        private final Map<String, Map<String, List<Row>>> applications = new HashMap<>();
+
+        DatabaseRows(final List<Row> rows) {
+            for(Row row : rows) {
+                applications.computeIfAbsent(row.APPLICATION(), app -> new TreeMap<>())
+                        .computeIfAbsent(row.PROFILE(), profile -> new ArrayList<>())
+                        .add(row);
+            }
+            applications.values().forEach(profiles -> profiles.values().forEach(profile -> profile.sort(ORDER)));
+        }
+
+        @Override
+        public boolean writeRows(final ConfigKey lookup, final JsonGenerator generator) throws IOException {
+            final Map<String, List<Row>> profiles = applications.get(lookup.application());
+            if(profiles == null) {
+                return false;
+            }
+            if(lookup.profile() == null) {
+                for(List<Row> profile : profiles.values()) {
+                    write(profile, 0, profile.size(), generator);
+                }
+                return true;
+            }
+            final List<Row> profile = profiles.get(lookup.profile());
+            if(profile == null) {
+                return false;
+            }
+            if(lookup.key() == null) {
+                write(profile, 0, profile.size(), generator);
+                return true;
+            }
+            final int from = lowerBound(profile, lookup.key());
+            int to = from;
+            while(to < profile.size() && profile.get(to).PROP_KEY().equals(lookup.key())) {
+                to++;
+            }
+            write(profile, from, to, generator);
+            return from != to;
+        }
+
+        private static int lowerBound(final List<Row> profile, final String key) {
+            int low = 0;
+            int high = profile.size();
+            while(low < high) {
+                final int mid = (low + high) >>> 1;
+                if(profile.get(mid).PROP_KEY().compareTo(key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private static void write(final List<Row> rows, final int from, final int to, final JsonGenerator generator) throws IOException {
+            for(int i = from; i < to; i++) {
+                final Row row = rows.get(i);
+                ConfigJson.writeRow(generator, row.APPLICATION(), row.PROFILE(), row.LABEL(), row.PROP_KEY(), row.VALUE());
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.config.configserver.service;
+
+import com.config.configserver.exception.DatabaseBusyException;
+import com.config.configserver.exception.ResultNotFoundException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache in front of ConfigDatabaseService.streamConfiguration.
+ * Found results stay until evicted by size or invalidated by the loader; not-found results expire after negativeTtl
+ * so a newly loaded application becomes visible without an explicit invalidation.
+ * Results larger than maxEntryBytes are never held whole on the heap: they are streamed to the caller and not cached.
+ * Concurrent misses on the same key are coalesced: the first runs the query and the rest wait for its result, so a
+ * fleet restarting together costs one query per lookup rather than one per instance. Followers share a not-found
+ * and a database failure too, but not a result that spilled (it is streamed to the first caller only): they are let
+ * go the moment it spills and query for themselves, rather than waiting out the first caller's download. Followers
+ * wait at most maxWaitMs, like a lookup queueing for the database, then fail with DatabaseBusyException.
+ * Waiting followers are counted in config.cache.coalesced.
+ * Hit/miss/eviction counters are published as cache.* metrics with cache=config.
+ */
+@Service
+public class ConfigCache {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(ConfigCache.class);
+    private final ConfigDatabaseService configDatabaseService;
+    private final Cache<ConfigKey, CachedResult> cache;
+    private final int maxEntryBytes;
+    private final long maxWaitMs;
+    private final AtomicLong generation = new AtomicLong();
+    private final ConcurrentHashMap<ConfigKey, Flight> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    public ConfigCache(
+            final ConfigDatabaseService configDatabaseService,
+            final MeterRegistry meterRegistry,
+            @Value("${config.cache.maximum-size:10000}")        final long maximumSize,
+            @Value("${config.cache.negative-ttl-ms:5000}")      final long negativeTtlMs,
+            @Value("${config.cache.max-entry-bytes:262144}")    final int maxEntryBytes,
+            @Value("${config.serving.db-max-wait-ms:250}")      final long maxWaitMs
+    ) {
+        this.configDatabaseService = configDatabaseService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new ResultExpiry(TimeUnit.MILLISECONDS.toNanos(negativeTtlMs)))
+                .recordStats()
+                .build();
+        this.maxEntryBytes = maxEntryBytes;
+        this.maxWaitMs = maxWaitMs;
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "config");
+        this.coalesced = Counter.builder("config.cache.coalesced")
+                .description("Cache misses served by another request's in-flight query")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Serve from cache, streaming from the database on a miss.
+     * @param key Lookup
+     * @param overflow Opens the destination for a result too large to cache; only called once maxEntryBytes is exceeded
+     * @return JSON body, or null when it was too large and has been written to overflow instead
+     */
+    public byte[] fetchConfiguration(final ConfigKey key, final Overflow overflow)
+            throws SQLException, IOException, ResultNotFoundException {
+        final CachedResult cached = cache.getIfPresent(key);
+        if(cached != null) {
+            return bodyOf(key, cached);
+        }
+        final long loadedAt = generation.get();
+        final Flight flight = new Flight(loadedAt, new CompletableFuture<>());
+        final Flight leader = inFlight.putIfAbsent(key, flight);
+        if(leader == null) {
+            return lead(key, flight, overflow);
+        }
+        if(leader.generation() == loadedAt) {   // Started before an invalidation: its result may already be stale
+            final CachedResult shared = await(leader);
+            if(shared != null) {
+                coalesced.increment();
+                return bodyOf(key, shared);
+            }
+        }
+        return load(key, overflow, loadedAt, () -> {});
+    }
+
+    // Drop every cached lookup for the application; called whenever rows are written for it
+    public void invalidateApplication(final String application) {
+        generation.incrementAndGet();
+        cache.asMap().keySet().removeIf(key -> key.application().equals(application));
+        LOGGER.debug("Invalidated cached config for {}", application);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    // Run the query for every caller waiting on flight. Whatever happens, the flight is completed and removed,
+    // so no follower waits on a query that has ended; null tells them to query for themselves. A spilled result
+    // completes it with null as soon as it spills, before the rest is written out.
+    private byte[] lead(final ConfigKey key, final Flight flight, final Overflow overflow)
+            throws SQLException, IOException, ResultNotFoundException {
+        try {
+            final byte[] body = load(key, overflow, flight.generation(), () -> flight.result().complete(null));
+            flight.result().complete(body == null ? null : new CachedResult(body));
+            return body;
+        } catch (ResultNotFoundException e) {
+            flight.result().complete(NOT_FOUND);
+            throw e;
+        } catch (SQLException e) {
+            flight.result().completeExceptionally(e);
+            throw e;
+        } finally {
+            flight.result().complete(null);
+            inFlight.remove(key, flight);
+        }
+    }
+
+    // Followers rethrow the leader's SQLException itself, so a DatabaseBusyException stays a 503 for all of them;
+    // one that outwaits maxWaitMs is a 503 of its own
+    private CachedResult await(final Flight flight) throws SQLException {
+        try {
+            return flight.result().get(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new DatabaseBusyException("In-flight lookup not answered within " + maxWaitMs + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for an in-flight lookup", e);
+        } catch (ExecutionException e) {
+            throw (SQLException) e.getCause();
+        }
+    }
+
+    // One query; returns null when the result spilled to overflow, after running onSpill as it did
+    private byte[] load(final ConfigKey key, final Overflow overflow, final long loadedAt, final Runnable onSpill)
+            throws SQLException, IOException, ResultNotFoundException {
+        final SpillingOutputStream out = new SpillingOutputStream(maxEntryBytes, overflow, onSpill);
+        try {
+            configDatabaseService.streamConfiguration(out, key.sql(), key.params());
+        } catch (ResultNotFoundException e) {
+            cacheIfCurrent(key, NOT_FOUND, loadedAt);
+            throw e;
+        }
+        if(out.spilled()) {
+            out.flush();
+            return null;
+        }
+        final byte[] body = out.toByteArray();
+        cacheIfCurrent(key, new CachedResult(body), loadedAt);
+        return body;
+    }
+
+    private static byte[] bodyOf(final ConfigKey key, final CachedResult result) throws ResultNotFoundException {
+        if(result.body() == null) {
+            throw new ResultNotFoundException(key.path());
+        }
+        return result.body();
+    }
+
+    // A result read while an invalidation happened may already be stale, so it is served but not cached
+    private void cacheIfCurrent(final ConfigKey key, final CachedResult result, final long loadedAt) {
+        if(generation.get() == loadedAt) {
+            cache.put(key, result);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Overflow {
+        OutputStream open() throws IOException;
+    }
+
+    // body is null for a cached ResultNotFoundException
+    private record CachedResult(byte[] body) {}
+
+    private static final CachedResult NOT_FOUND = new CachedResult(null);
+
+    // A query in progress; result completes with null when followers cannot use it
+    private record Flight(long generation, CompletableFuture<CachedResult> result) {}
+
+    // Buffers up to limit bytes; past that, runs onSpill, opens the overflow stream once and writes everything
+    // through to it
+    private static final class SpillingOutputStream extends OutputStream {
+        private final int limit;
+        private final Overflow overflow;
+        private final Runnable onSpill;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream target;
+
+        SpillingOutputStream(final int limit, final Overflow overflow, final Runnable onSpill) {
+            this.limit = limit;
+            this.overflow = overflow;
+            this.onSpill = onSpill;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if(target == null && buffer.size() + len > limit) {
+                onSpill.run();
+                target = overflow.open();
+                buffer.writeTo(target);
+                buffer.reset();
+            }
+            if(target == null) {
+                buffer.write(b, off, len);
+            } else {
+                target.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if(target != null) {
+                target.flush();
+            }
+        }
+
+        boolean spilled() {
+            return target != null;
+        }
+
+        byte[] toByteArray() {
+            return buffer.toByteArray();
+        }
+    }
+
+    private record ResultExpiry(long negativeTtlNanos) implements Expiry<ConfigKey, CachedResult> {
+        @Override
+        public long expireAfterCreate(final ConfigKey key, final CachedResult value, final long currentTime) {
+            return value.body() == null ? negativeTtlNanos : Long.MAX_VALUE;
+        }
+
+        @Override
+        public long expireAfterUpdate(final ConfigKey key, final CachedResult value, final long currentTime, final long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(final ConfigKey key, final CachedResult value, final long currentTime, final long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
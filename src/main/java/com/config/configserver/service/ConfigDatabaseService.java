@@ -1,49 +1,180 @@
 package com.config.configserver.service;
 
 import com.config.configserver.database.Row;
+import com.config.configserver.database.RowChanges;
+import com.config.configserver.database.SourceDigest;
 import com.config.configserver.exception.ResultNotFoundException;
+import com.config.configserver.snapshot.ConfigJson;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.postgresql.PGConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
 import java.sql.*;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
-import static com.config.configserver.service.SqlStatements.SINGLE_INSERT;
+import static com.config.configserver.service.ConfigLoadingService.DEFAULT_LABEL;
+import static com.config.configserver.service.SqlStatements.*;
 
+/**
+ * Connections are borrowed from the pooled DataSource (HikariCP, see spring.datasource.hikari in application.yml).
+ * Statement caching is per-connection and handled by the driver, so the SQL passed to prepareStatement must stay
+ * the same String for the cache to hit - always use the constants in SqlStatements.
+ * Pool stats are published by actuator under /actuator/metrics/hikaricp.connections.*
+ * (hikaricp.connections.acquire is the connection acquisition time).
+ * Query timings are config.db.query tagged by statement, write transactions are config.db.write.
+ * Client lookups (streamConfiguration, fetchMatchingRows and the batch fetchApplicationRows) pass through a
+ * DatabaseBulkhead first and throw DatabaseBusyException when it is full; loading and reloading never wait on it.
+ */
 @Service
 public class ConfigDatabaseService {
 
     private final Logger LOGGER = LoggerFactory.getLogger(ConfigDatabaseService.class);
-    private final String url;
-    private final String usr;
-    private final String pwd;
+    private final DataSource dataSource;
+    private final int batchSize;
+    private final int fetchSize;
+    private final Map<String, Timer> queryTimers;
+    private final Timer otherQueries;
+    private final Timer writes;
+    private final DatabaseBulkhead lookups;
+    private final int spillMemoryBytes;
 
     public ConfigDatabaseService(
-            @Value("${spring.datasource.url}")      final String url,
-            @Value("${spring.datasource.username}") final String usr,
-            @Value("${spring.datasource.password}") final String pwd
+            final DataSource dataSource,
+            final MeterRegistry meterRegistry,
+            @Value("${config.loading.batch-size:500}") final int batchSize,
+            @Value("${config.serving.fetch-size:256}") final int fetchSize,
+            @Value("${config.serving.db-max-concurrent:8}") final int maxConcurrentLookups,
+            @Value("${config.serving.db-max-wait-ms:250}") final long maxLookupWaitMs,
+            @Value("${config.serving.spill-memory-bytes:262144}") final int spillMemoryBytes
     ) {
-        this.url = url;
-        this.usr = usr;
-        this.pwd = pwd;
+        this.dataSource = dataSource;
+        this.batchSize = batchSize;
+        this.fetchSize = fetchSize;
+        this.queryTimers = Map.of(
+                APP_SQL,                queryTimer(meterRegistry, "app"),
+                APP_PROFILE_SQL,        queryTimer(meterRegistry, "app_profile"),
+                APP_PROFILE_KEY_SQL,    queryTimer(meterRegistry, "app_profile_key"),
+                APP_PROFILE_PREFIX_SQL, queryTimer(meterRegistry, "app_profile_prefix"),
+                ALL_ROWS_SQL,           queryTimer(meterRegistry, "all_rows"),
+                APP_ROWS_SQL,           queryTimer(meterRegistry, "app_rows"),
+                APPS_ROWS_SQL,          queryTimer(meterRegistry, "apps_rows"),
+                APPS_ROWS_SQL_H2,       queryTimer(meterRegistry, "apps_rows"),
+                ALL_DIGESTS_SQL,        queryTimer(meterRegistry, "digests"),
+                APP_DIGESTS_SQL,        queryTimer(meterRegistry, "digests"));
+        this.otherQueries = queryTimer(meterRegistry, "other");
+        this.writes = Timer.builder("config.db.write")
+                .description("Write transactions, including commit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.lookups = new DatabaseBulkhead(maxConcurrentLookups, maxLookupWaitMs, meterRegistry);
+        this.spillMemoryBytes = spillMemoryBytes;
     }
 
-    // Fetch config by executing SQL against database as
-    public String fetchConfiguration(String sql, String... params) throws SQLException, ResultNotFoundException {
-        final PreparedStatement preparedStatement = setSqlParameters(sql, params);
-        final Optional<String> result = executeSqlAndFetchResult(preparedStatement);
-        if (result.isPresent()) {
-            LOGGER.info("Result found for key [{}]: ", result);
-            return result.get();
-        } else {
-            final String key = String.join("/", params);
-            LOGGER.info("No result found for key [{}]: ", key);
-            throw new ResultNotFoundException(key);
+    /**
+     * Stream the rows selected by one of the lookup statements into out as a JSON array (ConfigJson layout).
+     * Rows are read fetchSize at a time into a SpillBuffer (heap up to spillMemoryBytes, then a temp file), and only
+     * written to out once the connection and bulkhead permit are given back, so a slow client never holds either.
+     * Nothing is written when no row matches or the query fails.
+     * @param out Destination; flushed but not closed
+     * @param sql Lookup statement, eg. SqlStatements.APP_PROFILE_SQL
+     * @param params Parameters for sql, in order
+     */
+    public void streamConfiguration(final OutputStream out, final String sql, final String... params)
+            throws SQLException, IOException, ResultNotFoundException {
+        try(final SpillBuffer buffer = new SpillBuffer(spillMemoryBytes)) {
+            readJson(buffer, sql, params);
+            buffer.writeTo(out);
+            out.flush();
         }
     }
 
+    private void readJson(final OutputStream out, final String sql, final String... params)
+            throws SQLException, IOException, ResultNotFoundException {
+        lookups.acquire();
+        final long start = System.nanoTime();
+        try(final Connection conn = dataSource.getConnection()) {
+            final boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);  // Postgres only reads through a cursor (honours the fetch size) inside a transaction
+            try(final PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+                setSqlParameters(preparedStatement, params);
+                preparedStatement.setFetchSize(fetchSize);
+                try(final ResultSet rs = preparedStatement.executeQuery()) {
+                    if(!rs.next()) {
+                        final String key = String.join("/", params);
+                        LOGGER.info("No result found for key [{}]: ", key);
+                        throw new ResultNotFoundException(key);
+                    }
+                    writeJson(rs, out);
+                }
+            } finally {
+                conn.setAutoCommit(autoCommit); // Ends the read-only transaction
+            }
+        } finally {
+            record(sql, start);
+            lookups.release();
+        }
+    }
+
+    // Rows of the profile whose key matches the pattern; the database only returns keys with its prefix
+    public List<Row> fetchMatchingRows(final String application, final String profile, final KeyPattern pattern) throws SQLException {
+        final List<Row> rows;
+        lookups.acquire();
+        try {
+            rows = queryRows(APP_PROFILE_PREFIX_SQL, application, profile, pattern.prefix(), pattern.prefix());
+        } finally {
+            lookups.release();
+        }
+        if(!pattern.prefixOnly()) {
+            rows.removeIf(row -> !pattern.matches(row.PROP_KEY()));
+        }
+        return rows;
+    }
+
+    // Every stored row, used to rebuild the in-memory snapshot
+    public List<Row> fetchAllRows() throws SQLException {
+        return queryRows(ALL_ROWS_SQL);
+    }
+
+    // Every stored row of one application
+    public List<Row> fetchApplicationRows(final String application) throws SQLException {
+        return queryRows(APP_ROWS_SQL, application);
+    }
+
+    // Every stored row of the applications, in one set-based query (array parameter, dialect specific)
+    public List<Row> fetchApplicationRows(final Collection<String> applications) throws SQLException {
+        final List<Row> rows = new ArrayList<>();
+        lookups.acquire();
+        final long start = System.nanoTime();
+        try(final Connection conn = dataSource.getConnection();
+            final PreparedStatement preparedStatement = conn.prepareStatement(
+                    conn.isWrapperFor(PGConnection.class) ? APPS_ROWS_SQL : APPS_ROWS_SQL_H2)) {
+            preparedStatement.setArray(1, conn.createArrayOf("varchar", applications.toArray()));
+            preparedStatement.setFetchSize(batchSize);
+            try(final ResultSet rs = preparedStatement.executeQuery()) {
+                readRows(rs, rows);
+            }
+        } finally {
+            record(APPS_ROWS_SQL, start);
+            lookups.release();
+        }
+        return rows;
+    }
+
     // Does what it says
     public boolean insertIntoDatabase(
             final String appName,
@@ -51,41 +182,281 @@ public class ConfigDatabaseService {
             final String prop_key,
             final String value
     ) throws SQLException {
-        final Row row = new Row(appName, profile, prop_key, value, "latest");
+        final Row row = new Row(appName, profile, prop_key, value, DEFAULT_LABEL);
         LOGGER.info("Inserting --> " + row);
-        String[] params = {appName, profile, prop_key, value, "latest"};
-        try(final Connection conn = DriverManager.getConnection(url, usr, pwd)) {
-            final PreparedStatement preparedStatement = conn.prepareStatement(SINGLE_INSERT);
-            for(int i = 0; i < params.length; i++) {
-                preparedStatement.setString(i + 1, params[i]);
-            }
+        try(final Connection conn = dataSource.getConnection();
+            final PreparedStatement preparedStatement = conn.prepareStatement(SINGLE_INSERT)) {
+            setSqlParameters(preparedStatement, insertParams(row));
             return preparedStatement.execute();
         }
     }
 
-    // Set parameters into the SQL statement
-    private PreparedStatement setSqlParameters(String sql, String... params) throws SQLException {
-        try(final Connection conn = DriverManager.getConnection(url, usr, pwd)) {
-            final PreparedStatement preparedStatement = conn.prepareStatement(sql);
-            for(int i = 1, j = 0; i < params.length; i++, j++) {
-                preparedStatement.setString(i, params[j]);
+    // Apply inserted, updated and deleted rows in a single transaction; returns the number of rows touched
+    public int applyChanges(final RowChanges changes) throws SQLException {
+        if(changes.isEmpty()) {
+            return 0;
+        }
+        return inTransaction(conn -> writeChanges(conn, changes));
+    }
+
+    // As applyChanges, and replace the application's source digests in the same transaction
+    public int applyChanges(final RowChanges changes, final String application, final List<SourceDigest> digests) throws SQLException {
+        return inTransaction(conn -> {
+            final int touched = writeChanges(conn, changes);
+            try(final PreparedStatement delete = conn.prepareStatement(DELETE_APP_DIGESTS)) {
+                delete.setString(1, application);
+                delete.executeUpdate();
+            }
+            try(final PreparedStatement insert = conn.prepareStatement(INSERT_DIGEST)) {
+                for(SourceDigest digest : digests) {
+                    insert.setString(1, digest.APPLICATION());
+                    insert.setString(2, digest.KIND());
+                    insert.setString(3, digest.NAME());
+                    insert.setLong(4, digest.SIZE());
+                    insert.setLong(5, digest.MODIFIED());
+                    insert.setString(6, digest.HASH());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            return touched;
+        });
+    }
+
+    /**
+     * Upsert and delete properties in one transaction: each upsert is an UPDATE, and the keys no row was reported
+     * updated for are then written with UPSERT, which the unique PROPERTIES_KEY_IDX keeps correct even when a
+     * reload inserts the same key in between. Those are reported as inserted; so are updates a driver answered with
+     * SUCCESS_NO_INFO, whose UPSERT then finds the row. Deletes of keys that are not stored are dropped from the
+     * result, unless the driver could not tell.
+     * @param upserts Rows to store, matched on APPLICATION, PROFILE, LABEL and PROP_KEY
+     * @param deletes Rows to remove (VALUE is ignored)
+     * @return RowChanges that were applied
+     */
+    public RowChanges applyWrites(final List<Row> upserts, final List<Row> deletes) throws SQLException {
+        return inTransaction(conn -> {
+            final int[] stored = touched(conn, DELETE, deletes, ConfigDatabaseService::keyParams);
+            final int[] existing = touched(conn, UPDATE, upserts, ConfigDatabaseService::updateParams);
+            final List<Row> deleted = new ArrayList<>();
+            final List<Row> updated = new ArrayList<>();
+            final List<Row> inserted = new ArrayList<>();
+            for(int i = 0; i < deletes.size(); i++) {
+                if(stored[i] != 0) {
+                    deleted.add(deletes.get(i));
+                }
+            }
+            for(int i = 0; i < upserts.size(); i++) {
+                (existing[i] > 0 ? updated : inserted).add(upserts.get(i));
+            }
+            batchRows(conn, conn.isWrapperFor(PGConnection.class) ? UPSERT : UPSERT_H2, inserted, ConfigDatabaseService::insertParams);
+            return new RowChanges(inserted, updated, deleted);
+        });
+    }
+
+    // Stored source digests grouped by application
+    public Map<String, List<SourceDigest>> fetchAllDigests() throws SQLException {
+        return groupByApplication(queryDigests(ALL_DIGESTS_SQL));
+    }
+
+    public List<SourceDigest> fetchDigests(final String application) throws SQLException {
+        return queryDigests(APP_DIGESTS_SQL, application);
+    }
+
+    // Deletes first so updates and inserts never collide with rows on their way out; inserts use COPY on Postgres
+    private int writeChanges(final Connection conn, final RowChanges changes) throws SQLException {
+        return batchRows(conn, DELETE, changes.deleted(), ConfigDatabaseService::keyParams)
+                + batchRows(conn, UPDATE, changes.updated(), ConfigDatabaseService::updateParams)
+                + (conn.isWrapperFor(PGConnection.class) && !changes.inserted().isEmpty()
+                        ? copyRows(conn.unwrap(PGConnection.class), changes.inserted())
+                        : batchRows(conn, SINGLE_INSERT, changes.inserted(), ConfigDatabaseService::insertParams));
+    }
+
+    private List<SourceDigest> queryDigests(final String sql, final String... params) throws SQLException {
+        final List<SourceDigest> digests = new ArrayList<>();
+        final long start = System.nanoTime();
+        try(final Connection conn = dataSource.getConnection();
+            final PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            setSqlParameters(preparedStatement, params);
+            try(final ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()) {
+                    digests.add(new SourceDigest(rs.getString(1), rs.getString(2), rs.getString(3), rs.getLong(4), rs.getLong(5), rs.getString(6)));
+                }
+            }
+        } finally {
+            record(sql, start);
+        }
+        return digests;
+    }
+
+    private static Map<String, List<SourceDigest>> groupByApplication(final List<SourceDigest> digests) {
+        final Map<String, List<SourceDigest>> grouped = new HashMap<>();
+        for(SourceDigest digest : digests) {
+            grouped.computeIfAbsent(digest.APPLICATION(), app -> new ArrayList<>()).add(digest);
+        }
+        return grouped;
+    }
+
+    // Run work on one connection, committing on success and rolling back on any failure
+    private <T> T inTransaction(final TransactionWork<T> work) throws SQLException {
+        final long start = System.nanoTime();
+        try(final Connection conn = dataSource.getConnection()) {
+            final boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                final T result = work.apply(conn);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } finally {
+            writes.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private List<Row> queryRows(final String sql, final String... params) throws SQLException {
+        final List<Row> rows = new ArrayList<>();
+        final long start = System.nanoTime();
+        try(final Connection conn = dataSource.getConnection();
+            final PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            setSqlParameters(preparedStatement, params);
+            preparedStatement.setFetchSize(batchSize);
+            try(final ResultSet rs = preparedStatement.executeQuery()) {
+                readRows(rs, rows);
+            }
+        } finally {
+            record(sql, start);
+        }
+        return rows;
+    }
+
+    // Row queries select: application, profile, label, prop_key, value
+    private static void readRows(final ResultSet rs, final List<Row> rows) throws SQLException {
+        while(rs.next()) {
+            rows.add(new Row(rs.getString(1), rs.getString(2), rs.getString(4), rs.getString(5), rs.getString(3)));
+        }
+    }
+
+    private int batchRows(final Connection conn, final String sql, final List<Row> rows, final Function<Row, String[]> params) throws SQLException {
+        int touched = 0;
+        if(rows.isEmpty()) {
+            return touched;
+        }
+        try(final PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            for(int i = 0; i < rows.size(); i++) {
+                setSqlParameters(preparedStatement, params.apply(rows.get(i)));
+                preparedStatement.addBatch();
+                if((i + 1) % batchSize == 0 || i == rows.size() - 1) {
+                    for(int count : preparedStatement.executeBatch()) {
+                        touched += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+                    }
+                }
             }
-            return preparedStatement;
-        }
-    }
-
-    // Execute SQL and return result; closing ResultSet and PreparedStatement
-    private Optional<String> executeSqlAndFetchResult(PreparedStatement sql) throws SQLException {
-        final ResultSet rs = sql.executeQuery();
-        if(rs.next()) {
-            final String result = rs.getString(1);
-            rs.close();
-            sql.close();
-            return Optional.of(result);
-        } else {
-            rs.close();
-            sql.close();
-            return Optional.empty();
+        }
+        return touched;
+    }
+
+    // Per row, the update count of its statement; Statement.SUCCESS_NO_INFO when the driver does not report one
+    private int[] touched(final Connection conn, final String sql, final List<Row> rows, final Function<Row, String[]> params) throws SQLException {
+        final int[] touched = new int[rows.size()];
+        if(rows.isEmpty()) {
+            return touched;
+        }
+        try(final PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+            int first = 0;
+            for(int i = 0; i < rows.size(); i++) {
+                setSqlParameters(preparedStatement, params.apply(rows.get(i)));
+                preparedStatement.addBatch();
+                if((i + 1) % batchSize == 0 || i == rows.size() - 1) {
+                    final int[] counts = preparedStatement.executeBatch();
+                    System.arraycopy(counts, 0, touched, first, counts.length);
+                    first = i + 1;
+                }
+            }
+        }
+        return touched;
+    }
+
+    // SINGLE_INSERT and UPSERT: application, profile, label, prop_key, value
+    private static String[] insertParams(final Row row) {
+        return new String[] {row.APPLICATION(), row.PROFILE(), row.LABEL(), row.PROP_KEY(), row.VALUE()};
+    }
+
+    // UPDATE: value, then the row's key
+    private static String[] updateParams(final Row row) {
+        return new String[] {row.VALUE(), row.APPLICATION(), row.PROFILE(), row.LABEL(), row.PROP_KEY()};
+    }
+
+    // DELETE: application, profile, label, prop_key
+    private static String[] keyParams(final Row row) {
+        return new String[] {row.APPLICATION(), row.PROFILE(), row.LABEL(), row.PROP_KEY()};
+    }
+
+    private int copyRows(final PGConnection conn, final List<Row> rows) throws SQLException {
+        final StringBuilder csv = new StringBuilder(rows.size() * 64);
+        for(Row row : rows) {
+            appendCsv(csv, row.APPLICATION()).append(',');
+            appendCsv(csv, row.PROFILE()).append(',');
+            appendCsv(csv, row.LABEL()).append(',');
+            appendCsv(csv, row.PROP_KEY()).append(',');
+            appendCsv(csv, row.VALUE()).append('\n');
+        }
+        try {
+            return (int) conn.getCopyAPI().copyIn(BULK_INSERT, new StringReader(csv.toString()));
+        } catch (IOException e) {
+            throw new SQLException("COPY into PROPERTIES failed", e);
+        }
+    }
+
+    // Always quote so empty strings are not read back as NULL
+    private static StringBuilder appendCsv(final StringBuilder csv, final String value) {
+        csv.append('"');
+        for(int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if(c == '"') {
+                csv.append('"');
+            }
+            csv.append(c);
+        }
+        return csv.append('"');
+    }
+
+    // Set parameters into the SQL statement
+    private void setSqlParameters(PreparedStatement preparedStatement, String... params) throws SQLException {
+        for(int i = 0; i < params.length; i++) {
+            preparedStatement.setString(i + 1, params[i]);
+        }
+    }
+
+    private static Timer queryTimer(final MeterRegistry meterRegistry, final String statement) {
+        return Timer.builder("config.db.query")
+                .description("Query execution including connection acquisition and reading the results")
+                .tag("statement", statement)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private void record(final String sql, final long startNanos) {
+        queryTimers.getOrDefault(sql, otherQueries).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @FunctionalInterface
+    private interface TransactionWork<T> {
+        T apply(Connection conn) throws SQLException;
+    }
+
+    // Write the current row and every one after it; the generator buffers a few KB before passing them to out
+    private static void writeJson(final ResultSet rs, final OutputStream out) throws SQLException, IOException {
+        try(final JsonGenerator generator = ConfigJson.generator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            do {
+                ConfigJson.writeRow(generator, rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5));
+            } while(rs.next());
+            generator.writeEndArray();
         }
     }
 
@@ -0,0 +1,39 @@
+package com.config.configserver.service;
+
+import static com.config.configserver.service.SqlStatements.*;
+
+/**
+ * Identifies one lookup served by ConfigController: application, application/profile or application/profile/key.
+ * Narrower parts are null when the lookup does not use them.
+ */
+public record ConfigKey(String application, String profile, String key) {
+
+    public static ConfigKey of(final String application) {
+        return new ConfigKey(application, null, null);
+    }
+
+    public static ConfigKey of(final String application, final String profile) {
+        return new ConfigKey(application, profile, null);
+    }
+
+    public static ConfigKey of(final String application, final String profile, final String key) {
+        return new ConfigKey(application, profile, key);
+    }
+
+    // SQL statement answering this lookup
+    public String sql() {
+        return profile == null ? APP_SQL : key == null ? APP_PROFILE_SQL : APP_PROFILE_KEY_SQL;
+    }
+
+    // Parameters for sql(), in order
+    public String[] params() {
+        return profile == null ? new String[] {application}
+                : key == null ? new String[] {application, profile}
+                : new String[] {application, profile, key};
+    }
+
+    // eg. aService/dev/otherServiceURI
+    public String path() {
+        return String.join("/", params());
+    }
+}
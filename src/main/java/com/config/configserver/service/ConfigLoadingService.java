@@ -1,21 +1,28 @@
 package com.config.configserver.service;
 
+import com.config.configserver.database.Row;
+import com.config.configserver.parser.ConfigFileParser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.support.PropertiesLoaderUtils;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -23,33 +30,65 @@ import java.util.stream.Collectors;
 public class ConfigLoadingService {
 
     private final Logger LOGGER = LoggerFactory.getLogger(ConfigLoadingService.class);
-    public static final String LOCATION = "configurations/";
+    public static final String LOCATION = "configurations/";    // Default config tree, see config.loading.location
     public static final String APPLICATION = "application";
+    public static final String DEFAULT_LABEL = "latest";
+    private final Timer parseTimer;
+    private final Timer mergeTimer;
+    private final Path location;
+
+    // Per application, not per file: config.load.parse is reading every file, config.load.merge is building the rows
+    public ConfigLoadingService(
+            final MeterRegistry meterRegistry,
+            @Value("${config.loading.location:" + LOCATION + "}") final String location
+    ) {
+        this.location = Paths.get(location);
+        this.parseTimer = Timer.builder("config.load.parse")
+                .description("Reading and parsing an application's config files")
+                .register(meterRegistry);
+        this.mergeTimer = Timer.builder("config.load.merge")
+                .description("Layering each profile over an application's base properties and building the rows")
+                .register(meterRegistry);
+    }
+
+    // Parse the base file, merge it into each profile and return every resulting row (label DEFAULT_LABEL)
+    public List<Row> loadApplication(final Path app) throws IOException {
+        final String appName = app.getFileName().toString();
+        final Map<String, Path> profiles = fetchProfiles(app);  // Map of profile : app config file
+        long parseNanos = 0;
+        long mergeNanos = 0;
+        long start = System.nanoTime();
+        final Map<String, String> baseProperties = Collections.unmodifiableMap(loadPropertiesFromPath(profiles.get(APPLICATION)));
+        parseNanos += System.nanoTime() - start;
+        profiles.remove(APPLICATION);
+        final List<Row> rows = new ArrayList<>();
+        for(Map.Entry<String, Path> profile : profiles.entrySet()) { // For each profile
+            start = System.nanoTime();
+            final Map<String, String> profileProperties = loadPropertiesFromPath(profile.getValue());
+            final long parsed = System.nanoTime();
+            parseNanos += parsed - start;
+            final String profileName = profile.getKey();
+            new LayeredPropertyMap(baseProperties, profileProperties).forEach((key, value) -> // For each property
+                    rows.add(new Row(appName, profileName, key, value, DEFAULT_LABEL)));
+            mergeNanos += System.nanoTime() - parsed;
+        }
+        parseTimer.record(parseNanos, TimeUnit.NANOSECONDS);
+        mergeTimer.record(mergeNanos, TimeUnit.NANOSECONDS);
+        return rows;
+    }
 
     // Combine base properties (eg. application.yml) with profile specific properties (eg. application-dev.yml)
-    public Map<String, String> combineProperties(Map<String, String> baseProperties, Path path) throws IOException {
-        Map<String, String> profileProperties = loadPropertiesFromPath(path);
-        Map<String, String> result =  new HashMap<>(baseProperties);
-        result.putAll(profileProperties);   // Merge: duplicate keys are overwritten
-        return result;
+    // Profile keys win; the result is a view over both maps rather than a copy of the base (see LayeredPropertyMap)
+    public LayeredPropertyMap combineProperties(Map<String, String> baseProperties, Path path) throws IOException {
+        return new LayeredPropertyMap(baseProperties, loadPropertiesFromPath(path));
     }
 
     // Load contents of Path (must be on classpath) into a Map
     public Map<String, String> loadPropertiesFromPath(Path path) throws IOException {
         Map<String,String> propertyMap = new HashMap<>();
-        switch(path.toString().split("\\.")[1]) {
-            case "properties"   -> loadDotPropertiesFile(path, propertyMap);
-            case "yml"          -> loadDotYamlFile(path, propertyMap);
-            default -> throw new IllegalArgumentException("Unable to load unfamiliar file type");
-        }
-        return propertyMap;
-    }
-
-    private Map<String, String> loadDotPropertiesFile(Path path, Map<String, String> propertyMap) throws IOException {
-        Resource resource = new FileSystemResource(path);
-        Properties props = PropertiesLoaderUtils.loadProperties(resource);
-        for(Object key : props.keySet()) {
-            propertyMap.put(key.toString(), props.getProperty(key.toString()));
+        if(!ConfigFileParser.parse(path, propertyMap)) {    // YAML the streaming parser leaves to SnakeYAML (anchors, tags, ...)
+            propertyMap.clear();
+            loadDotYamlFile(path, propertyMap);
         }
         return propertyMap;
     }
@@ -92,14 +131,18 @@ public class ConfigLoadingService {
         }, Function.identity()));
     }
 
+    // Root of the config tree, one folder per application
+    public Path location() {
+        return location;
+    }
+
     public List<Path> fetchApplications() {
-        final Path dir = Paths.get(LOCATION);       // Get configurations/
         try {
-            return Files.list(dir)                  // Stream with full directory listing
+            return Files.list(location)             // Stream with full directory listing
                     .filter(Files::isDirectory)     // Return only directories
                     .collect(Collectors.toList());
         } catch (IOException e) {
-            LOGGER.error("Unable to load contents of {} due to IOException: ", LOCATION, e);
+            LOGGER.error("Unable to load contents of {} due to IOException: ", location, e);
             return List.of();
         }
     }
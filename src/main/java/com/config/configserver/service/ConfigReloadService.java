@@ -0,0 +1,273 @@
+package com.config.configserver.service;
+
+import com.config.configserver.database.Row;
+import com.config.configserver.database.RowChanges;
+import com.config.configserver.database.SourceDigest;
+import com.config.configserver.snapshot.ConfigSnapshotStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.config.configserver.database.SourceDigest.PROFILE;
+import static com.config.configserver.service.ConfigLoadingService.DEFAULT_LABEL;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the config tree (config.loading.location) and its application folders after startup. Events are debounced per application, so a
+ * burst of editor saves turns into one reload. A reload re-parses just that application, diffs the merged rows
+ * against what is stored and writes only the inserted/updated/deleted keys, then refreshes the cache and snapshot.
+ * Only rows with the loader's label (DEFAULT_LABEL) are compared, so rows written under other labels are left alone.
+ * prepare/apply are also the startup load's parse and persist phases: files and profiles whose digests match
+ * SOURCE_DIGESTS are neither parsed nor written.
+ */
+@Service
+public class ConfigReloadService {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(ConfigReloadService.class);
+    private final ConfigLoadingService configLoadingService;
+    private final ConfigDatabaseService configDatabaseService;
+    private final ConfigCache configCache;
+    private final ConfigSnapshotStore configSnapshotStore;
+    private final SourceDigestService sourceDigestService;
+    private final Timer persistTimer;
+    private final Counter rowsWritten;
+    private final boolean enabled;
+    private final long debounceMs;
+    private final Path root;
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final Map<String, ScheduledFuture<?>> pending = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+    private WatchService watchService;
+
+    public ConfigReloadService(
+            final ConfigLoadingService configLoadingService,
+            final ConfigDatabaseService configDatabaseService,
+            final ConfigCache configCache,
+            final ConfigSnapshotStore configSnapshotStore,
+            final SourceDigestService sourceDigestService,
+            final MeterRegistry meterRegistry,
+            @Value("${config.reload.enabled:true}")     final boolean enabled,
+            @Value("${config.reload.debounce-ms:500}")  final long debounceMs
+    ) {
+        this.configLoadingService = configLoadingService;
+        this.root = configLoadingService.location();
+        this.configDatabaseService = configDatabaseService;
+        this.configCache = configCache;
+        this.configSnapshotStore = configSnapshotStore;
+        this.sourceDigestService = sourceDigestService;
+        this.persistTimer = Timer.builder("config.load.persist")
+                .description("Diffing and writing one application's changes, startup load and reloads")
+                .register(meterRegistry);
+        this.rowsWritten = Counter.builder("config.load.rows")
+                .description("Rows inserted, updated or deleted by the startup load and reloads")
+                .register(meterRegistry);
+        this.enabled = enabled;
+        this.debounceMs = debounceMs;
+    }
+
+    @EventListener(ApplicationReadyEvent.class) // After the startup load
+    public void start() {
+        if(!enabled || !Files.isDirectory(root)) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            watch(root);
+            for(Path app : configLoadingService.fetchApplications()) {
+                watch(app);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Unable to watch {}, hot reload disabled: ", root, e);
+            return;
+        }
+        final CustomizableThreadFactory threads = new CustomizableThreadFactory("config-reload-");
+        threads.setDaemon(true);
+        scheduler = Executors.newSingleThreadScheduledExecutor(threads);   // Also serialises reloads
+        threads.newThread(this::pollEvents).start();
+        LOGGER.info("Watching {} for changes", root);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if(watchService != null) {
+            watchService.close();
+        }
+        if(scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Re-parse one application and write only the differences to what is stored.
+     * A missing folder deletes the application's loader rows.
+     * @param application Application (folder name under configurations/)
+     * @return RowChanges that were applied
+     */
+    public RowChanges reloadApplication(final String application) throws IOException, SQLException {
+        final Path app = root.resolve(application);
+        final RowChanges changes;
+        if(Files.isDirectory(app)) {
+            final PendingSync pending = prepare(app, configDatabaseService.fetchDigests(application));
+            changes = pending == null ? RowChanges.NONE : apply(pending);
+        } else {
+            changes = removeApplication(application);
+        }
+        if(changes.isEmpty()) {
+            LOGGER.debug("No changes to apply for {}", application);
+            return changes;
+        }
+        configSnapshotStore.refresh(changes);
+        LOGGER.info("Reloaded {}: {} inserted, {} updated, {} deleted",
+                application, changes.inserted().size(), changes.updated().size(), changes.deleted().size());
+        return changes;
+    }
+
+    /**
+     * Parse phase: digest the application's files and, if their content changed, parse and merge them.
+     * @param app Application folder
+     * @param stored Digests stored for the application
+     * @return PendingSync to apply, or null when the files are exactly the stored ones
+     */
+    public PendingSync prepare(final Path app, final List<SourceDigest> stored) throws IOException {
+        final String application = app.getFileName().toString();
+        final List<SourceDigest> files = sourceDigestService.fileDigests(
+                application, configLoadingService.fetchProfiles(app).values(), stored);
+        if(sourceDigestService.sameFiles(files, stored)) {
+            return null;
+        }
+        final List<SourceDigest> digests = new ArrayList<>(files);
+        if(sourceDigestService.sameContent(files, stored)) { // Touched but not edited: only refresh the digests
+            digests.addAll(sourceDigestService.ofKind(stored, PROFILE));
+            return new PendingSync(application, List.of(), digests, Set.of());
+        }
+        final List<Row> rows = configLoadingService.loadApplication(app);
+        final List<SourceDigest> profiles = sourceDigestService.profileDigests(application, rows);
+        digests.addAll(profiles);
+        return new PendingSync(application, rows, digests, sourceDigestService.changedProfiles(profiles, stored));
+    }
+
+    /**
+     * Persist phase: diff the changed profiles against what is stored and write the differences together with
+     * the new digests in one transaction.
+     */
+    public RowChanges apply(final PendingSync pending) throws SQLException {
+        final long start = System.nanoTime();
+        final Set<String> changed = pending.changedProfiles();
+        RowChanges changes = RowChanges.NONE;
+        if(changed == null || !changed.isEmpty()) {
+            final List<Row> stored = configDatabaseService.fetchApplicationRows(pending.application()).stream()
+                    .filter(row -> DEFAULT_LABEL.equals(row.LABEL()))
+                    .filter(row -> changed == null || changed.contains(row.PROFILE()))
+                    .collect(Collectors.toList());
+            final List<Row> loaded = pending.rows().stream()
+                    .filter(row -> changed == null || changed.contains(row.PROFILE()))
+                    .collect(Collectors.toList());
+            changes = RowChanges.diff(stored, loaded);
+        }
+        configDatabaseService.applyChanges(changes, pending.application(), pending.digests());
+        persistTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        rowsWritten.increment(changes.size());
+        if(!changes.isEmpty()) {
+            configCache.invalidateApplication(pending.application());
+        }
+        return changes;
+    }
+
+    // Delete the loader rows and digests of an application whose folder is gone; the caller publishes the snapshot
+    public RowChanges removeApplication(final String application) throws SQLException {
+        final List<Row> stored = configDatabaseService.fetchApplicationRows(application).stream()
+                .filter(row -> DEFAULT_LABEL.equals(row.LABEL()))
+                .collect(Collectors.toList());
+        final RowChanges changes = RowChanges.diff(stored, List.of());
+        configDatabaseService.applyChanges(changes, application, List.of());
+        if(!changes.isEmpty()) {
+            configCache.invalidateApplication(application);
+        }
+        return changes;
+    }
+
+    private void pollEvents() {
+        try {
+            while(true) {
+                final WatchKey key = watchService.take();
+                final Path dir = watchedDirectories.get(key);
+                for(WatchEvent<?> event : key.pollEvents()) {
+                    if(event.kind() == OVERFLOW) {
+                        configLoadingService.fetchApplications().forEach(app -> schedule(app.getFileName().toString()));
+                    } else if(root.equals(dir)) {
+                        final Path app = root.resolve((Path) event.context());
+                        if(event.kind() == ENTRY_CREATE && Files.isDirectory(app)) {
+                            watch(app);
+                        }
+                        schedule(app.getFileName().toString());
+                    } else if(dir != null) {
+                        schedule(dir.getFileName().toString());
+                    }
+                }
+                if(!key.reset()) {
+                    watchedDirectories.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            LOGGER.debug("Stopped watching {}", root);
+        } catch (IOException e) {
+            LOGGER.error("Stopped watching {} due to IOException: ", root, e);
+        }
+    }
+
+    private void watch(final Path dir) throws IOException {
+        watchedDirectories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+    }
+
+    // Restart the application's debounce window; the reload runs once events stop for debounceMs
+    private void schedule(final String application) {
+        pending.compute(application, (app, previous) -> {
+            if(previous != null) {
+                previous.cancel(false);
+            }
+            return scheduler.schedule(() -> reload(app), debounceMs, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private void reload(final String application) {
+        try {
+            reloadApplication(application);
+        } catch (Exception e) {
+            LOGGER.error("Error while reloading config for {} ...: ", application, e);
+        }
+    }
+
+    /**
+     * Parsed application waiting to be persisted.
+     * changedProfiles is null when every profile must be compared (no profile digests were stored).
+     */
+    public record PendingSync(String application, List<Row> rows, List<SourceDigest> digests, Set<String> changedProfiles) {}
+}
@@ -0,0 +1,160 @@
+package com.config.configserver.service;
+
+import com.config.configserver.snapshot.ConfigSnapshot;
+import com.config.configserver.snapshot.ConfigSnapshotStore;
+import com.config.configserver.snapshot.SnapshotPublishedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Long-poll watches per application/profile. A watch is a DeferredResult parked in memory, so a waiting client
+ * holds a connection but no thread. When a snapshot is published, every watched scope whose ETag changed is
+ * completed with the new config; watches that time out are answered 304 Not Modified. Watches are answered from the
+ * snapshot in either serving mode, so they work once it is first published, like ?since= requests.
+ * Metrics: config.watch.watchers (gauge), config.watch.notifications (counter), config.watch.fanout (timer).
+ */
+@Service
+public class ConfigWatchService {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(ConfigWatchService.class);
+    private final ConfigSnapshotStore configSnapshotStore;
+    private final Map<ConfigKey, Set<Watch>> watches = new ConcurrentHashMap<>();
+    private final AtomicInteger watchers = new AtomicInteger();
+    private final Counter notifications;
+    private final Timer fanOut;
+    private final long maxTimeoutMs;
+
+    public ConfigWatchService(
+            final ConfigSnapshotStore configSnapshotStore,
+            final MeterRegistry meterRegistry,
+            @Value("${config.watch.max-timeout-ms:60000}") final long maxTimeoutMs
+    ) {
+        this.configSnapshotStore = configSnapshotStore;
+        this.maxTimeoutMs = maxTimeoutMs;
+        Gauge.builder("config.watch.watchers", watchers, AtomicInteger::get)
+                .description("Clients currently waiting for a change")
+                .register(meterRegistry);
+        this.notifications = Counter.builder("config.watch.notifications")
+                .description("Watches completed because their scope changed")
+                .register(meterRegistry);
+        this.fanOut = Timer.builder("config.watch.fanout")
+                .description("Time to complete every affected watch after a snapshot is published")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Wait for the scope to differ from knownEtag. Answers straight away when it already differs.
+     * @param scope Application and profile
+     * @param knownEtag ETag the client already holds, or null if it holds nothing
+     * @param timeoutMs How long to hold the request, clamped to 1..config.watch.max-timeout-ms
+     */
+    public DeferredResult<ResponseEntity<byte[]>> watch(final ConfigKey scope, final String knownEtag, final long timeoutMs) {
+        final ResponseEntity<byte[]> notModified = knownEtag == null
+                ? ResponseEntity.status(HttpStatus.NOT_MODIFIED).build()
+                : ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(knownEtag).build();
+        final DeferredResult<ResponseEntity<byte[]>> result = new DeferredResult<>(timeoutFor(timeoutMs), notModified);
+        final Watch watch = new Watch(knownEtag, result);
+
+        if(changed(configSnapshotStore.current(), scope, knownEtag)) {
+            result.setResult(response(configSnapshotStore.current(), scope));
+            return result;
+        }
+        register(scope, watch);
+        result.onCompletion(() -> unregister(scope, watch));
+        // A publish between the check above and register() would have been missed, so check again
+        final ConfigSnapshot current = configSnapshotStore.current();
+        if(changed(current, scope, knownEtag)) {
+            result.setResult(response(current, scope));
+        }
+        return result;
+    }
+
+    @EventListener
+    public void onSnapshotPublished(final SnapshotPublishedEvent event) {
+        if(watches.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        int completed = 0;
+        for(Map.Entry<ConfigKey, Set<Watch>> entry : watches.entrySet()) {
+            final ConfigKey scope = entry.getKey();
+            final String etag = event.current().etag(scope);
+            if(Objects.equals(etag, event.previous().etag(scope))) {
+                continue;
+            }
+            final ResponseEntity<byte[]> response = response(event.current(), scope);
+            for(Watch watch : entry.getValue()) {
+                if(!Objects.equals(watch.etag(), etag) && watch.result().setResult(response)) {
+                    completed++;
+                }
+            }
+        }
+        if(completed > 0) {
+            notifications.increment(completed);
+            fanOut.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            LOGGER.debug("Notified {} watchers of a config change", completed);
+        }
+    }
+
+    public int watcherCount() {
+        return watchers.get();
+    }
+
+    // 0 or less would hold the request, and a watch slot, for ever
+    long timeoutFor(final long requestedMs) {
+        return Math.max(1, Math.min(requestedMs, maxTimeoutMs));
+    }
+
+    // Before the first publish there is nothing to compare with, and onSnapshotPublished will answer
+    private boolean changed(final ConfigSnapshot snapshot, final ConfigKey scope, final String knownEtag) {
+        return configSnapshotStore.isPublished() && !Objects.equals(snapshot.etag(scope), knownEtag);
+    }
+
+    private ResponseEntity<byte[]> response(final ConfigSnapshot snapshot, final ConfigKey scope) {
+        final String etag = snapshot.etag(scope);
+        if(etag == null) {
+            return new ResponseEntity<>(scope.path().getBytes(UTF_8), HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok().eTag(etag).body(snapshot.profile(scope.application(), scope.profile()).json());
+    }
+
+    private void register(final ConfigKey scope, final Watch watch) {
+        watches.compute(scope, (key, set) -> {
+            final Set<Watch> watching = set == null ? ConcurrentHashMap.newKeySet() : set;
+            watching.add(watch);
+            return watching;
+        });
+        watchers.incrementAndGet();
+    }
+
+    private void unregister(final ConfigKey scope, final Watch watch) {
+        watches.computeIfPresent(scope, (key, set) -> {
+            if(set.remove(watch)) {
+                watchers.decrementAndGet();
+            }
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private record Watch(String etag, DeferredResult<ResponseEntity<byte[]>> result) {}
+}
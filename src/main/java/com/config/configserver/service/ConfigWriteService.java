@@ -0,0 +1,174 @@
+package com.config.configserver.service;
+
+import com.config.configserver.database.Row;
+import com.config.configserver.database.RowChanges;
+import com.config.configserver.exception.DatabaseBusyException;
+import com.config.configserver.snapshot.ConfigSnapshotStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Property writes from the API, applied by group commit: one writer thread takes every write queued while the
+ * previous transaction was committing and applies them together, so a burst of single-key writes costs a handful of
+ * commits instead of one each. Within a group the last write to a key wins.
+ * After each commit the affected applications are invalidated in the cache and re-published in the snapshot
+ * before any caller is answered, so a lookup made after a write returns sees it.
+ * A failed transaction fails every write in its group. When config.write.queue-capacity writes are already waiting,
+ * new ones are refused with DatabaseBusyException rather than queued. Writes still queued at shutdown, and any made
+ * after it, fail with SQLTransientException, so no caller waits on a commit that will never run.
+ * Writes per commit are config.write.group; commit timings are config.db.write.
+ * API writes default to API_LABEL: the loader's label (DEFAULT_LABEL) belongs to the files, and a reload deletes
+ * any key under it that its profile's files do not define.
+ */
+@Service
+public class ConfigWriteService {
+
+    public static final String API_LABEL = "api";
+
+    private final Logger LOGGER = LoggerFactory.getLogger(ConfigWriteService.class);
+    private final ConfigDatabaseService configDatabaseService;
+    private final ConfigCache configCache;
+    private final ConfigSnapshotStore configSnapshotStore;
+    private final DistributionSummary groupSize;
+    private final BlockingQueue<PendingWrite> queue;
+    private final int maxGroupRows;
+    private Thread writer;
+    private volatile boolean stopped;
+
+    public ConfigWriteService(
+            final ConfigDatabaseService configDatabaseService,
+            final ConfigCache configCache,
+            final ConfigSnapshotStore configSnapshotStore,
+            final MeterRegistry meterRegistry,
+            @Value("${config.write.queue-capacity:10000}")  final int queueCapacity,
+            @Value("${config.write.max-group-rows:5000}")   final int maxGroupRows
+    ) {
+        this.configDatabaseService = configDatabaseService;
+        this.configCache = configCache;
+        this.configSnapshotStore = configSnapshotStore;
+        this.groupSize = DistributionSummary.builder("config.write.group")
+                .description("Write requests applied by one commit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxGroupRows = maxGroupRows;
+    }
+
+    @PostConstruct
+    public void start() {
+        final CustomizableThreadFactory threads = new CustomizableThreadFactory("config-commit-");
+        threads.setDaemon(true);
+        writer = threads.newThread(this::drain);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        writer.interrupt();
+        failQueued();
+    }
+
+    /**
+     * Queue rows to be written with the next commit.
+     * @param rows Rows to upsert; a row with a null VALUE deletes the key instead
+     * @return Completes once the rows are committed and served, or exceptionally with the SQLException that rolled
+     *         them back (DatabaseBusyException when the queue is full)
+     */
+    public CompletableFuture<Void> write(final List<Row> rows) {
+        final PendingWrite pending = new PendingWrite(rows, new CompletableFuture<>());
+        if(!queue.offer(pending)) {
+            pending.done().completeExceptionally(new DatabaseBusyException(queue.size() + " writes already waiting to commit"));
+        } else if(stopped) {    // Queued after stop() drained the queue, or while it did
+            failQueued();
+        }
+        return pending.done();
+    }
+
+    private void failQueued() {
+        final List<PendingWrite> queued = new ArrayList<>();
+        queue.drainTo(queued);
+        queued.forEach(pending -> pending.done().completeExceptionally(new SQLTransientException("Shutting down, nothing was written")));
+    }
+
+    private void drain() {
+        try {
+            while(true) {
+                final List<PendingWrite> group = new ArrayList<>();
+                PendingWrite next = queue.take();
+                int rows = 0;
+                while(next != null) {
+                    group.add(next);
+                    rows += next.rows().size();
+                    next = rows < maxGroupRows ? queue.poll() : null;
+                }
+                commit(group);
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("Stopped writing");
+        }
+    }
+
+    private void commit(final List<PendingWrite> group) {
+        final Map<RowChanges.RowId, Row> latest = new LinkedHashMap<>();
+        for(PendingWrite pending : group) {
+            for(Row row : pending.rows()) {
+                latest.put(RowChanges.RowId.of(row), row);
+            }
+        }
+        final List<Row> upserts = new ArrayList<>();
+        final List<Row> deletes = new ArrayList<>();
+        for(Row row : latest.values()) {
+            (row.VALUE() == null ? deletes : upserts).add(row);
+        }
+        final RowChanges changes;
+        try {
+            changes = configDatabaseService.applyWrites(upserts, deletes);
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.error("Rolled back {} writes: ", group.size(), e);
+            group.forEach(pending -> pending.done().completeExceptionally(e));
+            return;
+        }
+        groupSize.record(group.size());
+        publish(changes);
+        group.forEach(pending -> pending.done().complete(null));
+    }
+
+    // The rows are committed whatever happens here, so a failed refresh is only logged; the next refresh or restart repairs it
+    private void publish(final RowChanges changes) {
+        final Set<String> applications = new TreeSet<>();
+        changes.inserted().forEach(row -> applications.add(row.APPLICATION()));
+        changes.updated().forEach(row -> applications.add(row.APPLICATION()));
+        changes.deleted().forEach(row -> applications.add(row.APPLICATION()));
+        if(applications.isEmpty()) {
+            return;
+        }
+        applications.forEach(configCache::invalidateApplication);
+        try {
+            configSnapshotStore.refresh(changes);
+        } catch (SQLException e) {
+            LOGGER.error("Unable to refresh the snapshot for {} after a write: ", applications, e);
+        }
+    }
+
+    private record PendingWrite(List<Row> rows, CompletableFuture<Void> done) {}
+}
@@ -0,0 +1,52 @@
+package com.config.configserver.service;
+
+import com.config.configserver.exception.DatabaseBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the client lookups running against the database at once. Callers queue in arrival order for at most maxWaitMs,
+ * then fail with DatabaseBusyException, so a saturated database sheds load as fast 503s instead of every request
+ * thread piling up on the pool. Kept below the pool size so the loader and reloads always find a connection.
+ * Rejections are config.db.bulkhead.rejected; config.db.bulkhead.waiting is the current queue length.
+ */
+final class DatabaseBulkhead {
+
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final long maxWaitMs;
+    private final Counter rejected;
+
+    DatabaseBulkhead(final int maxConcurrent, final long maxWaitMs, final MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMs = maxWaitMs;
+        this.rejected = Counter.builder("config.db.bulkhead.rejected")
+                .description("Lookups refused because no database permit became free in time")
+                .register(meterRegistry);
+        Gauge.builder("config.db.bulkhead.waiting", permits, Semaphore::getQueueLength)
+                .description("Lookups queued for a database permit")
+                .register(meterRegistry);
+    }
+
+    // Every successful acquire must be paired with release()
+    void acquire() throws DatabaseBusyException {
+        try {
+            if(permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejected.increment();
+        throw new DatabaseBusyException("All " + maxConcurrent + " database lookups busy for " + maxWaitMs + " ms");
+    }
+
+    void release() {
+        permits.release();
+    }
+}
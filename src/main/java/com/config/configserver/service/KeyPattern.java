@@ -0,0 +1,73 @@
+package com.config.configserver.service;
+
+/**
+ * Glob over property keys: * matches any run of characters (dots included), ? matches one character, everything
+ * else matches itself. eg. spring.datasource.* or *.url or server.?ort
+ * prefix() is the literal text before the first wildcard. Keys are kept sorted, so every match lies in the
+ * contiguous run of keys starting with it, and only that run needs to be checked.
+ */
+public final class KeyPattern {
+
+    private final String glob;
+    private final String prefix;
+    private final boolean prefixOnly;
+
+    private KeyPattern(final String glob) {
+        this.glob = glob;
+        int wildcard = 0;
+        while(wildcard < glob.length() && glob.charAt(wildcard) != '*' && glob.charAt(wildcard) != '?') {
+            wildcard++;
+        }
+        this.prefix = glob.substring(0, wildcard);
+        this.prefixOnly = wildcard == glob.length() - 1 && glob.charAt(wildcard) == '*';
+    }
+
+    public static KeyPattern of(final String glob) {
+        return new KeyPattern(glob);
+    }
+
+    public String glob() {
+        return glob;
+    }
+
+    // Literal text every matching key starts with
+    public String prefix() {
+        return prefix;
+    }
+
+    // True for "literal*": every key starting with prefix() matches, so no key has to be checked
+    public boolean prefixOnly() {
+        return prefixOnly;
+    }
+
+    // Backtracks only to the most recent *, so a key is checked in O(key * glob) at worst and never recursively
+    public boolean matches(final String key) {
+        int g = 0;
+        int k = 0;
+        int star = -1;
+        int resume = 0;
+        while(k < key.length()) {
+            if(g < glob.length() && (glob.charAt(g) == '?' || glob.charAt(g) == key.charAt(k))) {
+                g++;
+                k++;
+            } else if(g < glob.length() && glob.charAt(g) == '*') {
+                star = g++;
+                resume = k;
+            } else if(star >= 0) {
+                g = star + 1;
+                k = ++resume;
+            } else {
+                return false;
+            }
+        }
+        while(g < glob.length() && glob.charAt(g) == '*') {
+            g++;
+        }
+        return g == glob.length();
+    }
+
+    @Override
+    public String toString() {
+        return glob;
+    }
+}
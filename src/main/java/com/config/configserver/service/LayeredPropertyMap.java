@@ -0,0 +1,121 @@
+package com.config.configserver.service;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Read-only view of one profile's properties: the profile's own entries layered over the application's base entries.
+ * Every profile of an application shares the same base map, so a profile costs its overrides rather than a copy of
+ * the whole base. Lookups check the overrides first; iteration returns the overrides, then each base entry that is
+ * not overridden. Neither map may change while the view is in use.
+ * compact() flattens the view into an immutable map for callers that keep it beyond the load.
+ */
+public final class LayeredPropertyMap extends AbstractMap<String, String> {
+
+    private final Map<String, String> base;
+    private final Map<String, String> overrides;
+    private final int size;
+    private Set<Entry<String, String>> entrySet;
+
+    public LayeredPropertyMap(final Map<String, String> base, final Map<String, String> overrides) {
+        this.base = base;
+        this.overrides = overrides;
+        int shadowed = 0;
+        for(String key : overrides.keySet()) {
+            if(base.containsKey(key)) {
+                shadowed++;
+            }
+        }
+        this.size = base.size() + overrides.size() - shadowed;
+    }
+
+    @Override
+    public String get(final Object key) {
+        final String value = overrides.get(key);
+        return value != null ? value : base.get(key);
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return overrides.containsKey(key) || base.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Overrides, then base entries that are not overridden, without creating an iterator over the view
+    @Override
+    public void forEach(final BiConsumer<? super String, ? super String> action) {
+        overrides.forEach(action);
+        base.forEach((key, value) -> {
+            if(!overrides.containsKey(key)) {
+                action.accept(key, value);
+            }
+        });
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        if(entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new LayeredIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    // Merged entries in one immutable map, independent of the base
+    public Map<String, String> compact() {
+        return Map.copyOf(this);
+    }
+
+    private final class LayeredIterator implements Iterator<Entry<String, String>> {
+        private final Iterator<Entry<String, String>> overridden = overrides.entrySet().iterator();
+        private final Iterator<Entry<String, String>> inherited = base.entrySet().iterator();
+        private Entry<String, String> next;
+
+        @Override
+        public boolean hasNext() {
+            if(next != null) {
+                return true;
+            }
+            if(overridden.hasNext()) {
+                next = overridden.next();
+                return true;
+            }
+            while(inherited.hasNext()) {
+                final Entry<String, String> entry = inherited.next();
+                if(!overrides.containsKey(entry.getKey())) {
+                    next = entry;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Entry<String, String> entry = new SimpleImmutableEntry<>(next);
+            next = null;
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.config.configserver.service;
+
+import com.config.configserver.database.Row;
+import com.config.configserver.database.SourceDigest;
+import com.config.configserver.snapshot.ContentHash;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.config.configserver.database.SourceDigest.FILE;
+import static com.config.configserver.database.SourceDigest.PROFILE;
+
+/**
+ * Digests of the files an application is loaded from and of each merged profile, so the loader can tell what
+ * changed since the digests were stored and skip parsing and writing whatever did not.
+ */
+@Service
+public class SourceDigestService {
+
+    // Digest each file; a file whose size and mtime match its stored digest keeps the stored hash and is not read
+    public List<SourceDigest> fileDigests(final String application, final Collection<Path> files, final List<SourceDigest> stored) throws IOException {
+        final Map<String, SourceDigest> previous = byName(stored, FILE);
+        final List<SourceDigest> digests = new ArrayList<>(files.size());
+        for(Path file : files) {
+            final String name = file.getFileName().toString();
+            final long size = Files.size(file);
+            final long modified = Files.getLastModifiedTime(file).toMillis();
+            final SourceDigest known = previous.get(name);
+            final String hash = known != null && known.SIZE() == size && known.MODIFIED() == modified
+                    ? known.HASH()
+                    : hash(file);
+            digests.add(new SourceDigest(application, FILE, name, size, modified, hash));
+        }
+        return digests;
+    }
+
+    // Digest of each profile's merged rows, independent of row order
+    public List<SourceDigest> profileDigests(final String application, final List<Row> rows) {
+        final Map<String, List<Row>> byProfile = new TreeMap<>();
+        for(Row row : rows) {
+            byProfile.computeIfAbsent(row.PROFILE(), profile -> new ArrayList<>()).add(row);
+        }
+        final List<SourceDigest> digests = new ArrayList<>(byProfile.size());
+        byProfile.forEach((profile, profileRows) -> {
+            profileRows.sort((a, b) -> a.PROP_KEY().compareTo(b.PROP_KEY()));
+            final MessageDigest digest = ContentHash.digest();
+            for(Row row : profileRows) {
+                ContentHash.update(digest, row.LABEL(), row.PROP_KEY(), row.VALUE());
+            }
+            digests.add(new SourceDigest(application, PROFILE, profile, profileRows.size(), 0, ContentHash.hex(digest.digest())));
+        });
+        return digests;
+    }
+
+    // Same set of files with the same content hashes
+    public boolean sameContent(final List<SourceDigest> files, final List<SourceDigest> stored) {
+        final Map<String, SourceDigest> previous = byName(stored, FILE);
+        if(previous.size() != files.size()) {
+            return false;
+        }
+        for(SourceDigest file : files) {
+            final SourceDigest known = previous.get(file.NAME());
+            if(known == null || !known.HASH().equals(file.HASH())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Same files with the same size and mtime, so nothing needs to be written either
+    public boolean sameFiles(final List<SourceDigest> files, final List<SourceDigest> stored) {
+        final Map<String, SourceDigest> previous = byName(stored, FILE);
+        return previous.size() == files.size()
+                && files.stream().allMatch(file -> file.equals(previous.get(file.NAME())));
+    }
+
+    // Profiles added, removed or changed since the stored digests; null when no profile digests were stored
+    public Set<String> changedProfiles(final List<SourceDigest> profiles, final List<SourceDigest> stored) {
+        final Map<String, SourceDigest> previous = byName(stored, PROFILE);
+        if(previous.isEmpty()) {
+            return null;
+        }
+        final Set<String> changed = new HashSet<>(previous.keySet());
+        for(SourceDigest profile : profiles) {
+            final SourceDigest known = previous.get(profile.NAME());
+            if(known != null && Objects.equals(known.HASH(), profile.HASH())) {
+                changed.remove(profile.NAME());
+            } else {
+                changed.add(profile.NAME());
+            }
+        }
+        return changed;
+    }
+
+    public List<SourceDigest> ofKind(final List<SourceDigest> digests, final String kind) {
+        return digests.stream().filter(digest -> digest.KIND().equals(kind)).toList();
+    }
+
+    private static Map<String, SourceDigest> byName(final List<SourceDigest> digests, final String kind) {
+        final Map<String, SourceDigest> byName = new HashMap<>();
+        for(SourceDigest digest : digests) {
+            if(digest.KIND().equals(kind)) {
+                byName.put(digest.NAME(), digest);
+            }
+        }
+        return byName;
+    }
+
+    private static String hash(final Path file) throws IOException {
+        final MessageDigest digest = ContentHash.digest();
+        final byte[] buffer = new byte[8192];
+        try(final InputStream in = Files.newInputStream(file)) {
+            for(int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return ContentHash.hex(digest.digest());
+    }
+}
@@ -0,0 +1,60 @@
+package com.config.configserver.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Holds a result between reading it off the database and writing it to the client: the first memoryLimit bytes on
+ * the heap, the rest in a temp file. Lets streamConfiguration give its connection back before a slow client reads.
+ * Written once, copied out with writeTo; close() deletes the file.
+ */
+final class SpillBuffer extends OutputStream {
+
+    private final int memoryLimit;
+    private final ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private Path file;              // null until the heap part is full
+    private OutputStream fileOut;
+
+    SpillBuffer(final int memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        if(fileOut == null && memory.size() + len <= memoryLimit) {
+            memory.write(b, off, len);
+            return;
+        }
+        if(fileOut == null) {
+            file = Files.createTempFile("config-lookup-", ".json");
+            fileOut = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+        }
+        fileOut.write(b, off, len);
+    }
+
+    // Everything written so far, in order
+    void writeTo(final OutputStream out) throws IOException {
+        memory.writeTo(out);
+        if(fileOut != null) {
+            fileOut.flush();
+            Files.copy(file, out);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(fileOut != null) {
+            fileOut.close();
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -5,31 +5,66 @@ package com.config.configserver.service;
  */
 public class SqlStatements {
 
+    // Lookup queries return plain rows, ordered like the snapshot renders them, and are streamed into JSON
+    // by ConfigDatabaseService.streamConfiguration - so they run unchanged on H2 and Postgres
     public static final String APP_SQL = """
-        SELECT to_jsonb(array_agg(res))
-        FROM (
-            SELECT * FROM PROPERTIES
-            WHERE APPLICATION = ?
-        ) res
+        SELECT APPLICATION, PROFILE, LABEL, PROP_KEY, VALUE
+        FROM PROPERTIES
+        WHERE APPLICATION = ?
+        ORDER BY PROFILE, PROP_KEY, LABEL
     """;
 
     public static final String APP_PROFILE_SQL = """
-        SELECT to_jsonb(array_agg(res))
-        FROM (
-           SELECT * FROM PROPERTIES
-           WHERE APPLICATION = ?
-               AND PROFILE = ?
-        ) res
+        SELECT APPLICATION, PROFILE, LABEL, PROP_KEY, VALUE
+        FROM PROPERTIES
+        WHERE APPLICATION = ?
+            AND PROFILE = ?
+        ORDER BY PROP_KEY, LABEL
     """;
 
     public static final String APP_PROFILE_KEY_SQL = """
-        SELECT to_jsonb(array_agg(res))
-        FROM (
-           SELECT * FROM PROPERTIES
-           WHERE APPLICATION = ?
-               AND PROFILE = ?
-               AND PROP_KEY = ?
-        ) res
+        SELECT APPLICATION, PROFILE, LABEL, PROP_KEY, VALUE
+        FROM PROPERTIES
+        WHERE APPLICATION = ?
+            AND PROFILE = ?
+            AND PROP_KEY = ?
+        ORDER BY LABEL
+    """;
+
+    // Keys starting with the parameter (passed twice). A range on PROP_KEY would depend on the column collation,
+    // so the prefix is compared directly; the scan stays within the application/profile
+    public static final String APP_PROFILE_PREFIX_SQL = """
+        SELECT APPLICATION, PROFILE, LABEL, PROP_KEY, VALUE
+        FROM PROPERTIES
+        WHERE APPLICATION = ?
+            AND PROFILE = ?
+            AND SUBSTRING(PROP_KEY, 1, CHAR_LENGTH(?)) = ?
+        ORDER BY PROP_KEY, LABEL
+    """;
+
+    public static final String ALL_ROWS_SQL = """
+        SELECT APPLICATION, PROFILE, LABEL, PROP_KEY, VALUE
+        FROM PROPERTIES
+    """;
+
+    public static final String APP_ROWS_SQL = """
+        SELECT APPLICATION, PROFILE, LABEL, PROP_KEY, VALUE
+        FROM PROPERTIES
+        WHERE APPLICATION = ?
+    """;
+
+    // Postgres: rows of every application in the array parameter
+    public static final String APPS_ROWS_SQL = """
+        SELECT APPLICATION, PROFILE, LABEL, PROP_KEY, VALUE
+        FROM PROPERTIES
+        WHERE APPLICATION = ANY(?)
+    """;
+
+    // H2 equivalent of APPS_ROWS_SQL
+    public static final String APPS_ROWS_SQL_H2 = """
+        SELECT APPLICATION, PROFILE, LABEL, PROP_KEY, VALUE
+        FROM PROPERTIES
+        WHERE ARRAY_CONTAINS(?, APPLICATION)
     """;
 
     public static final String SINGLE_INSERT = """
@@ -39,14 +74,63 @@ public class SqlStatements {
         );
     """;
 
-//    public static final String BULK_INSERT = """
-//        COPY PROPERTIES FROM STDIN
-//        VACUUM ANALYZE
-//    """;
+    // Postgres only: rows are streamed as CSV in SINGLE_INSERT column order (see ConfigDatabaseService.copyRows)
+    public static final String BULK_INSERT = """
+        COPY PROPERTIES (APPLICATION, PROFILE, LABEL, PROP_KEY, VALUE)
+        FROM STDIN WITH (FORMAT csv)
+    """;
+
+    public static final String ALL_DIGESTS_SQL = """
+        SELECT APPLICATION, KIND, NAME, SOURCE_SIZE, SOURCE_MODIFIED, SOURCE_HASH
+        FROM SOURCE_DIGESTS
+    """;
+
+    public static final String APP_DIGESTS_SQL = """
+        SELECT APPLICATION, KIND, NAME, SOURCE_SIZE, SOURCE_MODIFIED, SOURCE_HASH
+        FROM SOURCE_DIGESTS
+        WHERE APPLICATION = ?
+    """;
+
+    public static final String INSERT_DIGEST = """
+        INSERT INTO SOURCE_DIGESTS (APPLICATION, KIND, NAME, SOURCE_SIZE, SOURCE_MODIFIED, SOURCE_HASH)
+        VALUES (?, ?, ?, ?, ?, ?)
+    """;
+
+    public static final String DELETE_APP_DIGESTS = """
+        DELETE FROM SOURCE_DIGESTS
+        WHERE APPLICATION = ?
+    """;
 
     public static final String UPDATE = """
-        UPDATE public.properties
-        SET created_on=?, application=?, profile=?, label=?, prop_key=?, value=?
-        WHERE <condition>;
+        UPDATE PROPERTIES
+        SET VALUE = ?, CREATED_ON = NOW()
+        WHERE APPLICATION = ?
+            AND PROFILE = ?
+            AND LABEL = ?
+            AND PROP_KEY = ?
+    """;
+
+    // Postgres: insert, or update the row already stored under the key (PROPERTIES_KEY_IDX). Safe against a
+    // concurrent insert of the same key, where UPDATE then INSERT is not
+    public static final String UPSERT = """
+        INSERT INTO PROPERTIES (APPLICATION, PROFILE, LABEL, PROP_KEY, VALUE)
+        VALUES (?, ?, ?, ?, ?)
+        ON CONFLICT (APPLICATION, PROFILE, LABEL, PROP_KEY)
+        DO UPDATE SET VALUE = EXCLUDED.VALUE, CREATED_ON = NOW()
+    """;
+
+    // H2 equivalent of UPSERT
+    public static final String UPSERT_H2 = """
+        MERGE INTO PROPERTIES (APPLICATION, PROFILE, LABEL, PROP_KEY, VALUE, CREATED_ON)
+        KEY (APPLICATION, PROFILE, LABEL, PROP_KEY)
+        VALUES (?, ?, ?, ?, ?, NOW())
+    """;
+
+    public static final String DELETE = """
+        DELETE FROM PROPERTIES
+        WHERE APPLICATION = ?
+            AND PROFILE = ?
+            AND LABEL = ?
+            AND PROP_KEY = ?
     """;
 }
@@ -0,0 +1,70 @@
+package com.config.configserver.snapshot;
+
+import com.config.configserver.database.Row;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable profiles of one application, ordered by profile name, with the pre-rendered JSON of all of them
+ * (joined from the profiles' own JSON, so it is never rendered twice).
+ */
+public final class ApplicationConfig {
+
+    private final String name;
+    private final Map<String, ProfileConfig> profiles;
+    private final Rendered rendered;
+
+    private ApplicationConfig(final String name, final Map<String, ProfileConfig> profiles, final Rendered rendered) {
+        this.name = name;
+        this.profiles = Collections.unmodifiableMap(profiles);
+        this.rendered = rendered;
+    }
+
+    static ApplicationConfig of(final String name, final Map<String, List<Row>> rowsByProfile) {
+        final Map<String, ProfileConfig> profiles = new TreeMap<>();
+        rowsByProfile.forEach((profile, rows) -> profiles.put(profile, ProfileConfig.of(name, profile, rows)));
+        return new ApplicationConfig(name.intern(), profiles, new Rendered(json(profiles)));
+    }
+
+    // Profiles ordered by name whose joined JSON has the given ETag (see SnapshotFile)
+    static ApplicationConfig restored(final String name, final TreeMap<String, ProfileConfig> profiles, final String etag) {
+        return new ApplicationConfig(name, profiles, new Rendered(json(profiles), etag));
+    }
+
+    private static byte[] json(final Map<String, ProfileConfig> profiles) {
+        final List<byte[]> arrays = new ArrayList<>(profiles.size());
+        profiles.values().forEach(profile -> arrays.add(profile.json()));
+        return ConfigJson.joinArrays(arrays);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Map<String, ProfileConfig> profiles() {
+        return profiles;
+    }
+
+    public ProfileConfig profile(final String profile) {
+        return profiles.get(profile);
+    }
+
+    // Pre-rendered JSON array of every row across all profiles
+    public byte[] json() {
+        return rendered.json();
+    }
+
+    // Pre-rendered body in the representation; gzip and CBOR are encoded on first use
+    public byte[] body(final Representation representation) {
+        return rendered.body(representation);
+    }
+
+    // Content hash of json()
+    public String etag() {
+        return rendered.etag();
+    }
+}
@@ -0,0 +1,133 @@
+package com.config.configserver.snapshot;
+
+import com.config.configserver.database.Row;
+import com.config.configserver.database.RowChanges;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Recent key changes per application/profile, so a client holding revision r can be sent only what changed after it.
+ * Revision numbers come from one counter; each reset (a full rebuild or restore) forgets every change and starts a
+ * new random epoch, and a revision of any other epoch - from before the reset, a previous run or another instance -
+ * gets the whole profile, as does one from the future.
+ * Each profile keeps its last maxChanges changes. A client further behind than that gets the whole profile too.
+ * ConfigSnapshotStore appends under its publish lock before publishing the snapshot stamped with the same revision,
+ * and readers take the snapshot before asking for changes, so every change up to the snapshot's revision is here.
+ */
+final class ChangeLog {
+
+    private final int maxChanges;
+    private volatile State state = new State(Revision.NONE.epoch(), new ConcurrentHashMap<>());
+    private long revision;
+
+    ChangeLog(final int maxChanges) {
+        if(maxChanges < 1) {    // A history that can hold nothing could not tell "no changes" from "changes dropped"
+            throw new IllegalArgumentException("config.delta.max-changes must be at least 1, was " + maxChanges);
+        }
+        this.maxChanges = maxChanges;
+    }
+
+    // Forget every change and start a new epoch: nothing before the returned revision can be answered with changes
+    synchronized Revision reset() {
+        long epoch;
+        do {
+            epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        } while(epoch == state.epoch());
+        state = new State(epoch, new ConcurrentHashMap<>());
+        return new Revision(epoch, ++revision);
+    }
+
+    // Record committed changes under one new revision, which is returned
+    synchronized Revision append(final RowChanges changes) {
+        final long next = ++revision;
+        changes.inserted().forEach(row -> record(row, new Change(next, row.PROP_KEY(), row.LABEL(), row.VALUE())));
+        changes.updated().forEach(row -> record(row, new Change(next, row.PROP_KEY(), row.LABEL(), row.VALUE())));
+        changes.deleted().forEach(row -> record(row, new Change(next, row.PROP_KEY(), row.LABEL(), null)));
+        return new Revision(state.epoch(), next);
+    }
+
+    /**
+     * Latest change of each key/label changed after since, up to and including upTo, in the order they were made.
+     * Walks back from the newest change, so the cost follows the number of changes returned, not the profile size.
+     * @return Changes, or null when they are not all held any more (or since is not a revision this log issued in
+     *         the current epoch)
+     */
+    List<Change> changes(final String application, final String profile, final Revision since, final Revision upTo) {
+        final State current = state;
+        if(since == null || since.epoch() != current.epoch() || upTo.epoch() != current.epoch() || since.number() > upTo.number()) {
+            return null;
+        }
+        final History history = current.histories().get(new ProfileId(application, profile));
+        if(history == null) {
+            return List.of();
+        }
+        final List<Change> newestFirst = history.between(since.number(), upTo.number());
+        if(newestFirst == null) {
+            return null;
+        }
+        final Map<KeyId, Change> latest = new LinkedHashMap<>();
+        for(int i = newestFirst.size() - 1; i >= 0; i--) {
+            final Change change = newestFirst.get(i);
+            final KeyId id = new KeyId(change.key(), change.label());
+            latest.remove(id);  // Re-inserted, so keys stay in the order of their latest change
+            latest.put(id, change);
+        }
+        return new ArrayList<>(latest.values());
+    }
+
+    private void record(final Row row, final Change change) {
+        state.histories().computeIfAbsent(ProfileId.of(row), id -> new History()).append(change, maxChanges);
+    }
+
+    // value is null for a removed key
+    record Change(long revision, String key, String label, String value) {}
+
+    // Replaced whole by reset, so a reader never pairs a new epoch with the old histories or the reverse
+    private record State(long epoch, Map<ProfileId, History> histories) {}
+
+    private record KeyId(String key, String label) {}
+
+    private record ProfileId(String application, String profile) {
+        static ProfileId of(final Row row) {
+            return new ProfileId(row.APPLICATION(), row.PROFILE());
+        }
+    }
+
+    private static final class History {
+        private final ArrayDeque<Change> changes = new ArrayDeque<>();
+        private long dropped;   // Revision of the newest change no longer held
+
+        synchronized void append(final Change change, final int maxChanges) {
+            if(changes.size() == maxChanges) {
+                dropped = changes.removeFirst().revision();
+            }
+            changes.addLast(change);
+        }
+
+        // Newest first; null when a change after since has been dropped
+        synchronized List<Change> between(final long since, final long upTo) {
+            if(since < dropped) {
+                return null;
+            }
+            final List<Change> result = new ArrayList<>();
+            final Iterator<Change> newest = changes.descendingIterator();
+            while(newest.hasNext()) {
+                final Change change = newest.next();
+                if(change.revision() <= since) {
+                    break;
+                }
+                if(change.revision() <= upTo) {
+                    result.add(change);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.config.configserver.snapshot;
+
+import com.config.configserver.database.Row;
+import com.config.configserver.service.KeyPattern;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * JSON layout of config rows, shared by every serving path so responses look the same wherever they come from:
+ * [{"application":"aService","profile":"dev","label":"latest","prop_key":"test.property","value":"http://url-dev.com"}]
+ * The other representations are derived from the rendered JSON, so they always carry the same rows.
+ */
+public final class ConfigJson {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+
+    private ConfigJson() {}
+
+    public static JsonGenerator generator(final OutputStream out) throws IOException {
+        return FACTORY.createGenerator(out, JsonEncoding.UTF8);
+    }
+
+    public static void writeRow(
+            final JsonGenerator generator,
+            final String application,
+            final String profile,
+            final String label,
+            final String key,
+            final String value
+    ) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("application", application);
+        generator.writeStringField("profile", profile);
+        generator.writeStringField("label", label);
+        generator.writeStringField("prop_key", key);
+        generator.writeStringField("value", value);
+        generator.writeEndObject();
+    }
+
+    // Render a JSON array of the rows in [from, to) of the profile
+    static byte[] renderArray(final ProfileConfig profile, final int from, final int to) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(64 * (to - from) + 2);
+        try(final JsonGenerator generator = generator(out)) {
+            generator.writeStartArray();
+            profile.writeRows(generator, from, to);
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // In-memory output cannot fail
+        }
+        return out.toByteArray();
+    }
+
+    // Render a JSON array of the rows in [from, to) of the profile whose key matches the pattern
+    static byte[] renderMatching(final ProfileConfig profile, final int from, final int to, final KeyPattern pattern) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(final JsonGenerator generator = generator(out)) {
+            generator.writeStartArray();
+            profile.writeMatching(generator, from, to, pattern);
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    // Render a JSON array of the rows, in order
+    public static byte[] renderRows(final List<Row> rows) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(64 * rows.size() + 2);
+        try(final JsonGenerator generator = generator(out)) {
+            generator.writeStartArray();
+            for(Row row : rows) {
+                writeRow(generator, row.APPLICATION(), row.PROFILE(), row.LABEL(), row.PROP_KEY(), row.VALUE());
+            }
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    // One JSON array of the elements of the rendered arrays, in order: the same bytes as rendering them together
+    static byte[] joinArrays(final List<byte[]> arrays) {
+        int length = 2;
+        for(byte[] array : arrays) {
+            length += array.length;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        out.write('[');
+        boolean first = true;
+        for(byte[] array : arrays) {
+            if(array.length > 2) {  // Skips []
+                if(!first) {
+                    out.write(',');
+                }
+                out.write(array, 1, array.length - 2);
+                first = false;
+            }
+        }
+        out.write(']');
+        return out.toByteArray();
+    }
+
+    // {"revision":"epoch.number","full":false,"rows":[changed rows],"removed":[{"label":..,"prop_key":..}]}
+    static byte[] renderChanges(final String application, final String profile, final Revision revision, final List<ChangeLog.Change> changes) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(64 * changes.size() + 64);
+        try(final JsonGenerator generator = generator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("revision", revision.toString());
+            generator.writeBooleanField("full", false);
+            generator.writeArrayFieldStart("rows");
+            for(ChangeLog.Change change : changes) {
+                if(change.value() != null) {
+                    writeRow(generator, application, profile, change.label(), change.key(), change.value());
+                }
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("removed");
+            for(ChangeLog.Change change : changes) {
+                if(change.value() == null) {
+                    generator.writeStartObject();
+                    generator.writeStringField("label", change.label());
+                    generator.writeStringField("prop_key", change.key());
+                    generator.writeEndObject();
+                }
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    // {"revision":"epoch.number","full":true,"rows":[every row of the profile]}
+    static byte[] renderFull(final Revision revision, final ProfileConfig profile) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(profile.json().length + 64);
+        try(final JsonGenerator generator = generator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("revision", revision.toString());
+            generator.writeBooleanField("full", true);
+            generator.writeArrayFieldStart("rows");
+            profile.writeRows(generator, 0, profile.size());
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    // Rendered JSON in the requested representation
+    public static byte[] encode(final byte[] json, final Representation representation) {
+        return switch(representation) {
+            case JSON -> json;
+            case JSON_GZIP -> gzip(json);
+            case CBOR -> toCbor(json);
+        };
+    }
+
+    // Best compression: it is paid once per result and snapshot, and every gzip response afterwards is smaller
+    static byte[] gzip(final byte[] json) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 32);
+        try(final GZIPOutputStream gzip = new GZIPOutputStream(out, 8192) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    // Same structure as the JSON, token for token
+    static byte[] toCbor(final byte[] json) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try(final JsonParser parser = FACTORY.createParser(json);
+            final JsonGenerator generator = CBOR_FACTORY.createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Wrap out so JSON written to it arrives as CBOR, converted token by token as the bytes come in (for results
+     * streamed because they are too large to hold). Flush once the JSON is complete.
+     */
+    public static OutputStream cborEncoding(final OutputStream out) throws IOException {
+        return new CborEncoding(out);
+    }
+
+    // Feeds a non-blocking JSON parser and copies each complete token to a CBOR generator; partial tokens wait for the next write
+    private static final class CborEncoding extends OutputStream {
+        private final JsonParser parser;
+        private final ByteArrayFeeder feeder;
+        private final JsonGenerator generator;
+        private final OutputStream out;
+
+        CborEncoding(final OutputStream out) throws IOException {
+            this.parser = FACTORY.createNonBlockingByteArrayParser();
+            this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+            this.generator = CBOR_FACTORY.createGenerator(out);
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            feeder.feedInput(b, off, off + len);
+            JsonToken token;
+            while((token = parser.nextToken()) != JsonToken.NOT_AVAILABLE && token != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+            out.flush();
+        }
+    }
+}
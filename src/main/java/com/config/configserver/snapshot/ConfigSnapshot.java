@@ -0,0 +1,177 @@
+package com.config.configserver.snapshot;
+
+import com.config.configserver.database.Row;
+import com.config.configserver.exception.ResultNotFoundException;
+import com.config.configserver.service.ConfigKey;
+import com.config.configserver.service.KeyPattern;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of every loaded row, grouped by application and profile.
+ * Snapshots are never modified; a reload builds a new one and swaps it into ConfigSnapshotStore.
+ * revision is the ChangeLog revision the store published it at, Revision.NONE until then.
+ */
+public final class ConfigSnapshot {
+
+    public static final ConfigSnapshot EMPTY = new ConfigSnapshot(Map.of(), Revision.NONE);
+
+    private final Map<String, ApplicationConfig> applications;
+    private final Revision revision;
+
+    private ConfigSnapshot(final Map<String, ApplicationConfig> applications, final Revision revision) {
+        this.applications = applications;
+        this.revision = revision;
+    }
+
+    public static ConfigSnapshot of(final Collection<Row> rows) {
+        final Map<String, Map<String, List<Row>>> grouped = new HashMap<>();
+        for(Row row : rows) {
+            grouped.computeIfAbsent(row.APPLICATION(), app -> new HashMap<>())
+                    .computeIfAbsent(row.PROFILE(), profile -> new ArrayList<>())
+                    .add(row);
+        }
+        final Map<String, ApplicationConfig> applications = new HashMap<>();
+        grouped.forEach((app, profiles) -> applications.put(app, ApplicationConfig.of(app, profiles)));
+        return new ConfigSnapshot(Map.copyOf(applications), Revision.NONE);
+    }
+
+    // Snapshot of already built applications, eg. decoded from a SnapshotFile
+    static ConfigSnapshot ofApplications(final Map<String, ApplicationConfig> applications) {
+        return new ConfigSnapshot(Map.copyOf(applications), Revision.NONE);
+    }
+
+    // New snapshot with one application's rows replaced; other applications are shared, not copied
+    public ConfigSnapshot withApplication(final String application, final Collection<Row> rows) {
+        final Map<String, ApplicationConfig> next = new HashMap<>(applications);
+        if(rows.isEmpty()) {
+            next.remove(application);
+        } else {
+            final Map<String, List<Row>> profiles = new HashMap<>();
+            for(Row row : rows) {
+                profiles.computeIfAbsent(row.PROFILE(), profile -> new ArrayList<>()).add(row);
+            }
+            next.put(application, ApplicationConfig.of(application, profiles));
+        }
+        return new ConfigSnapshot(Map.copyOf(next), revision);
+    }
+
+    // The same applications, stamped with the revision they are published at
+    ConfigSnapshot withRevision(final Revision revision) {
+        return new ConfigSnapshot(applications, revision);
+    }
+
+    public Revision revision() {
+        return revision;
+    }
+
+    public Map<String, ApplicationConfig> applications() {
+        return applications;
+    }
+
+    public ApplicationConfig application(final String application) {
+        return applications.get(application);
+    }
+
+    public ProfileConfig profile(final String application, final String profile) {
+        final ApplicationConfig app = applications.get(application);
+        return app == null ? null : app.profile(profile);
+    }
+
+    // JSON for the lookup; pre-rendered for applications and profiles, rendered from the sorted keys for a single key
+    public byte[] render(final ConfigKey key) throws ResultNotFoundException {
+        return render(key, Representation.JSON);
+    }
+
+    // The lookup in the representation: pre-rendered for applications and profiles, encoded per request for a key
+    public byte[] render(final ConfigKey key, final Representation representation) throws ResultNotFoundException {
+        final byte[] body;
+        if(key.profile() == null) {
+            final ApplicationConfig app = applications.get(key.application());
+            body = app == null ? null : app.body(representation);
+        } else {
+            final ProfileConfig profile = profile(key.application(), key.profile());
+            if(profile == null) {
+                body = null;
+            } else if(key.key() == null) {
+                body = profile.body(representation);
+            } else {
+                final byte[] json = profile.renderKey(key.key());
+                body = json == null ? null : ConfigJson.encode(json, representation);
+            }
+        }
+        if(body == null) {
+            throw new ResultNotFoundException(key.path());
+        }
+        return body;
+    }
+
+    // JSON of the profile's rows whose key matches the pattern; throws when the profile is missing or nothing matches
+    public byte[] renderMatching(final String application, final String profile, final KeyPattern pattern) throws ResultNotFoundException {
+        final ProfileConfig config = profile(application, profile);
+        final byte[] json = config == null ? null : config.renderMatching(pattern);
+        if(json == null) {
+            throw new ResultNotFoundException(application + "/" + profile + "?keys=" + pattern);
+        }
+        return json;
+    }
+
+    // Write the rows render(key) would return, without the enclosing array; false when the lookup has no result
+    public boolean writeRows(final ConfigKey key, final JsonGenerator generator) throws IOException {
+        if(key.profile() == null) {
+            final ApplicationConfig app = applications.get(key.application());
+            if(app == null) {
+                return false;
+            }
+            for(ProfileConfig profile : app.profiles().values()) {
+                profile.writeRows(generator, 0, profile.size());
+            }
+            return true;
+        }
+        final ProfileConfig profile = profile(key.application(), key.profile());
+        if(profile == null) {
+            return false;
+        }
+        if(key.key() == null) {
+            profile.writeRows(generator, 0, profile.size());
+            return true;
+        }
+        final int from = profile.lowerBound(key.key());
+        int to = from;
+        while(to < profile.size() && profile.key(to).equals(key.key())) {
+            to++;
+        }
+        profile.writeRows(generator, from, to);
+        return from != to;
+    }
+
+    // Strong ETag of what render(key) returns, or null when the lookup has no result
+    public String etag(final ConfigKey key) {
+        if(key.profile() == null) {
+            final ApplicationConfig app = applications.get(key.application());
+            return app == null ? null : app.etag();
+        }
+        final ProfileConfig profile = profile(key.application(), key.profile());
+        return profile == null ? null : key.key() == null ? profile.etag() : profile.keyEtag(key.key());
+    }
+
+    public String etag(final ConfigKey key, final Representation representation) {
+        return representation.etag(etag(key));
+    }
+
+    public int rowCount() {
+        int rows = 0;
+        for(ApplicationConfig app : applications.values()) {
+            for(ProfileConfig profile : app.profiles().values()) {
+                rows += profile.size();
+            }
+        }
+        return rows;
+    }
+}
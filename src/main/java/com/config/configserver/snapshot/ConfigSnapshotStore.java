@@ -0,0 +1,167 @@
+package com.config.configserver.snapshot;
+
+import com.config.configserver.database.Row;
+import com.config.configserver.database.RowChanges;
+import com.config.configserver.exception.ResultNotFoundException;
+import com.config.configserver.service.ConfigDatabaseService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the snapshot ConfigController serves from. Readers take the current reference without locking;
+ * reloads build a complete new snapshot and publish it with a single volatile write.
+ * The database stays the durable copy: rebuild() recreates the snapshot from PROPERTIES.
+ * Every publish is announced with a SnapshotPublishedEvent so watchers can work out what changed.
+ * With config.snapshot.path set, rebuild() and refresh() save the snapshot they publish to a SnapshotFile, under the
+ * publish lock so the file never lags a published write or overwrites a newer one; restore() publishes that file at
+ * boot, so lookups are answered from the last good snapshot while the database is still being brought up to date.
+ * Each publish stamps the snapshot with a ChangeLog revision. refresh() records the committed changes under it, so
+ * renderChanges() can send a client only the keys changed since its revision; publish() starts the log afresh.
+ */
+@Service
+public class ConfigSnapshotStore {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(ConfigSnapshotStore.class);
+    private final ConfigDatabaseService configDatabaseService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final Path file;                    // null when snapshots are not kept on disk
+    private final boolean writeFile;
+    private final ChangeLog changeLog;
+    private volatile ConfigSnapshot snapshot;   // null until the first publish
+
+    public ConfigSnapshotStore(
+            final ConfigDatabaseService configDatabaseService,
+            final ApplicationEventPublisher eventPublisher,
+            @Value("${config.serving.source:snapshot}") final String source,
+            @Value("${config.snapshot.path:}")          final String file,
+            @Value("${config.snapshot.write:true}")     final boolean writeFile,
+            @Value("${config.delta.max-changes:1000}")  final int maxChanges
+    ) {
+        this.configDatabaseService = configDatabaseService;
+        this.eventPublisher = eventPublisher;
+        this.enabled = "snapshot".equalsIgnoreCase(source);
+        this.file = StringUtils.hasText(file) ? Paths.get(file) : null;
+        this.writeFile = writeFile;
+        this.changeLog = new ChangeLog(maxChanges);
+    }
+
+    // True once a snapshot has been published and snapshot serving is enabled; until then lookups go to the database
+    public boolean isServing() {
+        return enabled && snapshot != null;
+    }
+
+    // True once a snapshot has been published, whether or not lookups are served from it
+    public boolean isPublished() {
+        return snapshot != null;
+    }
+
+    public ConfigSnapshot current() {
+        final ConfigSnapshot current = snapshot;
+        return current == null ? ConfigSnapshot.EMPTY : current;
+    }
+
+    // Publish a snapshot built from scratch; clients behind it get whole profiles from renderChanges
+    public synchronized void publish(final ConfigSnapshot next) {
+        swap(next.withRevision(changeLog.reset()));
+    }
+
+    // Re-read the applications the committed changes touch and publish them in one snapshot, recording the changes
+    // under its revision. Reading under the publish lock means a refresh that starts after a commit can never be
+    // overtaken by an older read of the same application
+    public synchronized void refresh(final RowChanges changes) throws SQLException {
+        final Set<String> applications = new TreeSet<>();
+        for(List<Row> rows : List.of(changes.inserted(), changes.updated(), changes.deleted())) {
+            rows.forEach(row -> applications.add(row.APPLICATION()));
+        }
+        ConfigSnapshot next = current();
+        try {
+            for(String application : applications) {
+                next = next.withApplication(application, configDatabaseService.fetchApplicationRows(application));
+            }
+        } catch (SQLException e) {
+            changeLog.reset();  // The changes are committed but cannot be published, so no client may be sent a delta without them
+            throw e;
+        }
+        swap(next.withRevision(changeLog.append(changes)));
+        save();
+    }
+
+    /**
+     * {"revision":r,"full":false,"rows":[rows added or changed],"removed":[{"label":..,"prop_key":..}]} after since,
+     * or {"revision":r,"full":true,"rows":[every row]} when the changes since then are no longer held, or since was
+     * issued by another epoch of the log (see Revision). Send r as since next time.
+     * @param since Revision token the client holds, eg. "0" for the first request
+     */
+    public byte[] renderChanges(final String application, final String profile, final String since) throws ResultNotFoundException {
+        final ConfigSnapshot current = current();   // Before the log, so every change up to its revision is there
+        final List<ChangeLog.Change> changes = changeLog.changes(application, profile, Revision.parse(since), current.revision());
+        if(changes != null) {
+            return ConfigJson.renderChanges(application, profile, current.revision(), changes);
+        }
+        final ProfileConfig config = current.profile(application, profile);
+        if(config == null) {
+            throw new ResultNotFoundException(application + "/" + profile);
+        }
+        return ConfigJson.renderFull(current.revision(), config);
+    }
+
+    // Rebuild the snapshot from the durable copy in the database
+    public synchronized ConfigSnapshot rebuild() throws SQLException {
+        final ConfigSnapshot next = ConfigSnapshot.of(configDatabaseService.fetchAllRows());
+        publish(next);
+        save();
+        return next;
+    }
+
+    // Publish the snapshot file if there is a valid one; false when there is none or it is rejected
+    public boolean restore() {
+        if(file == null || !Files.isRegularFile(file)) {
+            return false;
+        }
+        final long start = System.nanoTime();
+        try {
+            publish(SnapshotFile.read(file));
+            LOGGER.info("Restored config snapshot from {} in {} ms", file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring config snapshot file {}, lookups wait for the load: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    // Save the current snapshot for the next boot (and for replicas reading the same file); failures only cost startup time
+    private void save() {
+        final ConfigSnapshot current = snapshot;
+        if(file == null || !writeFile || current == null) {
+            return;
+        }
+        try {
+            SnapshotFile.write(current, file);
+        } catch (IOException e) {
+            LOGGER.error("Unable to write config snapshot file {}: ", file, e);
+        }
+    }
+
+    // Writers are serialised so each event sees the snapshot it actually replaced; readers never wait
+    private void swap(final ConfigSnapshot next) {
+        final ConfigSnapshot previous = current();
+        snapshot = next;
+        LOGGER.info("Published config snapshot: {} applications, {} rows", next.applications().size(), next.rowCount());
+        eventPublisher.publishEvent(new SnapshotPublishedEvent(previous, next));
+    }
+}
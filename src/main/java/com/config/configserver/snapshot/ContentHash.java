@@ -0,0 +1,52 @@
+package com.config.configserver.snapshot;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Strong ETag values: the first 128 bits of a SHA-256 over the content, as hex.
+ */
+public final class ContentHash {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int LENGTH = 16;
+
+    private ContentHash() {}
+
+    public static String of(final byte[] content) {
+        return hex(digest().digest(content));
+    }
+
+    // Hash a sequence of strings without concatenating them; each is terminated so ("ab","c") != ("a","bc")
+    public static String of(final String... parts) {
+        final MessageDigest digest = digest();
+        update(digest, parts);
+        return hex(digest.digest());
+    }
+
+    public static void update(final MessageDigest digest, final String... parts) {
+        for(String part : parts) {
+            digest.update(part.getBytes(UTF_8));
+            digest.update((byte) 0);
+        }
+    }
+
+    public static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every JVM", e);
+        }
+    }
+
+    public static String hex(final byte[] hash) {
+        final char[] chars = new char[LENGTH * 2];
+        for(int i = 0; i < LENGTH; i++) {
+            chars[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,180 @@
+package com.config.configserver.snapshot;
+
+import com.config.configserver.database.Row;
+import com.config.configserver.service.KeyPattern;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable rows of one application/profile held as parallel arrays sorted by key then label.
+ * Keys, labels and names are interned so repeated keys across profiles and applications share one String.
+ */
+public final class ProfileConfig {
+
+    private static final Comparator<Row> ORDER = Comparator.comparing(Row::PROP_KEY).thenComparing(Row::LABEL);
+
+    private final String application;
+    private final String profile;
+    private final String[] keys;
+    private final String[] labels;
+    private final String[] values;
+    private final Rendered rendered;
+
+    private ProfileConfig(final String application, final String profile, final String[] keys, final String[] labels, final String[] values) {
+        this.application = application;
+        this.profile = profile;
+        this.keys = keys;
+        this.labels = labels;
+        this.values = values;
+        this.rendered = new Rendered(ConfigJson.renderArray(this, 0, keys.length));
+    }
+
+    private ProfileConfig(final String application, final String profile, final String[] keys, final String[] labels, final String[] values, final Rendered rendered) {
+        this.application = application;
+        this.profile = profile;
+        this.keys = keys;
+        this.labels = labels;
+        this.values = values;
+        this.rendered = rendered;
+    }
+
+    static ProfileConfig of(final String application, final String profile, final List<Row> rows) {
+        final Row[] sorted = rows.toArray(Row[]::new);
+        Arrays.sort(sorted, ORDER);
+        final String[] keys = new String[sorted.length];
+        final String[] labels = new String[sorted.length];
+        final String[] values = new String[sorted.length];
+        for(int i = 0; i < sorted.length; i++) {
+            keys[i] = sorted[i].PROP_KEY().intern();
+            labels[i] = sorted[i].LABEL().intern();
+            values[i] = sorted[i].VALUE();
+        }
+        return new ProfileConfig(application.intern(), profile.intern(), keys, labels, values);
+    }
+
+    // Rows already sorted by key then label, with their JSON and ETag as previously rendered (see SnapshotFile)
+    static ProfileConfig restored(final String application, final String profile, final String[] keys, final String[] labels,
+                                  final String[] values, final byte[] json, final String etag) {
+        return new ProfileConfig(application, profile, keys, labels, values, new Rendered(json, etag));
+    }
+
+    public String application() {
+        return application;
+    }
+
+    public String profile() {
+        return profile;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public String key(final int index) {
+        return keys[index];
+    }
+
+    public String label(final int index) {
+        return labels[index];
+    }
+
+    public String value(final int index) {
+        return values[index];
+    }
+
+    // Pre-rendered JSON array of every row in this profile
+    public byte[] json() {
+        return rendered.json();
+    }
+
+    // Pre-rendered body in the representation; gzip and CBOR are encoded on first use
+    public byte[] body(final Representation representation) {
+        return rendered.body(representation);
+    }
+
+    // Content hash of json()
+    public String etag() {
+        return rendered.etag();
+    }
+
+    // First index whose key is >= probe (size() if none)
+    public int lowerBound(final String probe) {
+        int low = 0;
+        int high = keys.length;
+        while(low < high) {
+            final int mid = (low + high) >>> 1;
+            if(keys[mid].compareTo(probe) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First index at or after from whose key does not start with prefix; from must be lowerBound(prefix)
+    public int prefixEnd(final int from, final String prefix) {
+        int low = from;
+        int high = keys.length;
+        while(low < high) {
+            final int mid = (low + high) >>> 1;
+            if(keys[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Rendered rows whose key matches the pattern, or null when none does. Only the run of keys sharing the
+    // pattern's prefix is visited, so the cost follows the matched subtree rather than the profile.
+    public byte[] renderMatching(final KeyPattern pattern) {
+        final int from = lowerBound(pattern.prefix());
+        final int to = prefixEnd(from, pattern.prefix());
+        if(pattern.prefixOnly()) {
+            return from == to ? null : ConfigJson.renderArray(this, from, to);
+        }
+        for(int i = from; i < to; i++) {
+            if(pattern.matches(keys[i])) {
+                return ConfigJson.renderMatching(this, i, to, pattern);
+            }
+        }
+        return null;
+    }
+
+    // Rendered rows for the key (one per label), or null when the key is not present
+    public byte[] renderKey(final String key) {
+        final int from = lowerBound(key);
+        int to = from;
+        while(to < keys.length && keys[to].equals(key)) {
+            to++;
+        }
+        return from == to ? null : ConfigJson.renderArray(this, from, to);
+    }
+
+    // Content hash of renderKey(key), so the database path gives the same bytes the same ETag; null when the key is
+    // not present. A key's rows are a few hundred bytes, so rendering them to hash them costs next to nothing
+    public String keyEtag(final String key) {
+        final byte[] json = renderKey(key);
+        return json == null ? null : ContentHash.of(json);
+    }
+
+    void writeRows(final JsonGenerator generator, final int from, final int to) throws IOException {
+        for(int i = from; i < to; i++) {
+            ConfigJson.writeRow(generator, application, profile, labels[i], keys[i], values[i]);
+        }
+    }
+
+    void writeMatching(final JsonGenerator generator, final int from, final int to, final KeyPattern pattern) throws IOException {
+        for(int i = from; i < to; i++) {
+            if(pattern.matches(keys[i])) {
+                ConfigJson.writeRow(generator, application, profile, labels[i], keys[i], values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.config.configserver.snapshot;
+
+/**
+ * Pre-rendered bodies of one application or profile result. JSON and its ETag are built with the snapshot; gzip and
+ * CBOR are encoded on first request and then kept for the life of the snapshot, so a snapshot that is replaced
+ * or restored pays for compression only on the results clients actually ask for.
+ */
+final class Rendered {
+
+    private final byte[] json;
+    private final String etag;
+    private volatile byte[] gzip;   // Racing first requests may both encode these; either result is the same
+    private volatile byte[] cbor;
+
+    Rendered(final byte[] json) {
+        this(json, ContentHash.of(json));
+    }
+
+    // JSON whose ETag is already known, eg. both read back from a SnapshotFile
+    Rendered(final byte[] json, final String etag) {
+        this.json = json;
+        this.etag = etag;
+    }
+
+    byte[] json() {
+        return json;
+    }
+
+    String etag() {
+        return etag;
+    }
+
+    byte[] body(final Representation representation) {
+        return switch(representation) {
+            case JSON -> json;
+            case JSON_GZIP -> gzip();
+            case CBOR -> cbor();
+        };
+    }
+
+    private byte[] gzip() {
+        byte[] encoded = gzip;
+        if(encoded == null) {
+            encoded = ConfigJson.gzip(json);
+            gzip = encoded;
+        }
+        return encoded;
+    }
+
+    private byte[] cbor() {
+        byte[] encoded = cbor;
+        if(encoded == null) {
+            encoded = ConfigJson.toCbor(json);
+            cbor = encoded;
+        }
+        return encoded;
+    }
+}
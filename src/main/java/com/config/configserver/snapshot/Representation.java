@@ -0,0 +1,120 @@
+package com.config.configserver.snapshot;
+
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+
+/**
+ * Encodings a lookup result can be served in. Each has its own ETag (the JSON ETag plus a suffix) because
+ * the bytes differ; JSON keeps the plain ETag so existing clients see no change, and /watch compares baseEtag so a
+ * client may send back whichever ETag it holds.
+ * CBOR carries the same array of row objects as the JSON, for clients that parse config on their startup path.
+ */
+public enum Representation {
+
+    JSON(MediaType.APPLICATION_JSON, null, ""),
+    JSON_GZIP(MediaType.APPLICATION_JSON, "gzip", "-gzip"),
+    CBOR(new MediaType("application", "cbor"), null, "-cbor");
+
+    private final MediaType contentType;
+    private final String contentEncoding;
+    private final String etagSuffix;
+
+    Representation(final MediaType contentType, final String contentEncoding, final String etagSuffix) {
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.etagSuffix = etagSuffix;
+    }
+
+    /**
+     * @param accept Accept header, may be null
+     * @param acceptEncoding Accept-Encoding header, may be null
+     * @return CBOR when it is preferred over JSON, otherwise JSON, gzipped when the client accepts gzip
+     */
+    public static Representation negotiate(final String accept, final String acceptEncoding) {
+        if(prefersCbor(accept)) {
+            return CBOR;
+        }
+        return acceptsGzip(acceptEncoding) ? JSON_GZIP : JSON;
+    }
+
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    // Content-Encoding header value, null for identity
+    public String contentEncoding() {
+        return contentEncoding;
+    }
+
+    public String etag(final String jsonEtag) {
+        return jsonEtag == null ? null : jsonEtag + etagSuffix;
+    }
+
+    // ETag of the JSON a representation's ETag was derived from, eg. "abc-gzip" -> "abc"; other values unchanged
+    public static String baseEtag(final String etag) {
+        if(etag == null) {
+            return null;
+        }
+        for(Representation representation : values()) {
+            if(!representation.etagSuffix.isEmpty() && etag.endsWith(representation.etagSuffix)) {
+                return etag.substring(0, etag.length() - representation.etagSuffix.length());
+            }
+        }
+        return etag;
+    }
+
+    // Single key lookups are a few hundred bytes, too small for gzip to pay off, so they stay uncompressed
+    public Representation forKeyLookup() {
+        return this == JSON_GZIP ? JSON : this;
+    }
+
+    // CBOR only when the client rates it above JSON; a tie, */* or no Accept header mean JSON
+    private static boolean prefersCbor(final String accept) {
+        if(!StringUtils.hasText(accept)) {
+            return false;
+        }
+        final List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+        return quality(accepted, CBOR.contentType) > quality(accepted, JSON.contentType);
+    }
+
+    // Quality the most specific matching media range gives the type, 0 when none matches
+    private static double quality(final List<MediaType> accepted, final MediaType type) {
+        int specificity = -1;
+        double quality = 0;
+        for(MediaType range : accepted) {
+            final int rangeSpecificity = (range.isWildcardType() ? 0 : 1) + (range.isWildcardSubtype() ? 0 : 1);
+            if(rangeSpecificity > specificity && range.includes(type)) {
+                specificity = rangeSpecificity;
+                quality = range.getQualityValue();
+            }
+        }
+        return quality;
+    }
+
+    // gzip (or *) listed without q=0
+    private static boolean acceptsGzip(final String acceptEncoding) {
+        if(!StringUtils.hasText(acceptEncoding)) {
+            return false;
+        }
+        for(String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.split(";");
+            final String name = parts[0].trim();
+            if(!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean rejected = false;
+            for(int i = 1; i < parts.length; i++) {
+                final String parameter = parts[i].trim();
+                if(parameter.matches("[qQ]\\s*=\\s*0(\\.0{0,3})?")) {
+                    rejected = true;
+                }
+            }
+            if(!rejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
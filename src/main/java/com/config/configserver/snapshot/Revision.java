@@ -0,0 +1,34 @@
+package com.config.configserver.snapshot;
+
+/**
+ * Position in a ChangeLog, sent to clients as "epoch.number". The epoch is drawn at random each time the log is reset
+ * (every full rebuild or restore, and so every restart), so a revision is only ever compared with the log that
+ * issued it: one from before a restart, from another instance or made up by the client has a different epoch and is
+ * answered with the whole profile, whatever the clocks did.
+ */
+public record Revision(long epoch, long number) {
+
+    // Held by a snapshot that has not been published; matches no log
+    public static final Revision NONE = new Revision(0, 0);
+
+    /**
+     * @param token "epoch.number", as rendered by toString()
+     * @return Revision, or null when token is not one, eg. "0" from a client that holds nothing yet
+     */
+    public static Revision parse(final String token) {
+        final int dot = token.indexOf('.');
+        if(dot < 0) {
+            return null;
+        }
+        try {
+            return new Revision(Long.parseLong(token, 0, dot, 10), Long.parseLong(token, dot + 1, token.length(), 10));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return epoch + "." + number;
+    }
+}
@@ -0,0 +1,118 @@
+package com.config.configserver.snapshot;
+
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.cloud.config.server.environment.EnvironmentRepository;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.config.configserver.service.ConfigLoadingService.DEFAULT_LABEL;
+
+/**
+ * Serves the Spring Cloud Config protocol (/{application}/{profile}/{label} under spring.cloud.config.server.prefix)
+ * from the in-memory snapshot. Each application/profile/label gets its PropertySource and Environment built once per
+ * published snapshot and the same instances are returned to every request; applications a reload did not touch keep
+ * theirs. Rows already have the base file merged in, so one PropertySource per profile and label is complete.
+ * A missing label means the loader's label (DEFAULT_LABEL). Unknown applications, profiles or labels get an
+ * Environment without property sources, like the JDBC repository.
+ */
+@Component
+public class SnapshotEnvironmentRepository implements EnvironmentRepository {
+
+    private final ConfigSnapshotStore configSnapshotStore;
+    private volatile Index index = new Index(ConfigSnapshot.EMPTY, Map.of());
+
+    public SnapshotEnvironmentRepository(final ConfigSnapshotStore configSnapshotStore) {
+        this.configSnapshotStore = configSnapshotStore;
+    }
+
+    @EventListener
+    public void onSnapshotPublished(final SnapshotPublishedEvent event) {
+        refresh(event.current());
+    }
+
+    /**
+     * @param application Application (folder name under configurations/)
+     * @param profile One profile, or a comma separated list where later profiles take precedence
+     * @param label Label, DEFAULT_LABEL when null
+     * @return Environment, shared between requests for a single profile
+     */
+    @Override
+    public Environment findOne(final String application, final String profile, final String label) {
+        final String resolvedLabel = StringUtils.hasText(label) ? label : DEFAULT_LABEL;
+        final String[] profiles = StringUtils.commaDelimitedListToStringArray(profile);
+        final ApplicationEnvironments environments = refresh(configSnapshotStore.current()).applications().get(application);
+        if(profiles.length == 1) {
+            final Prepared prepared = lookup(environments, profiles[0], resolvedLabel);
+            if(prepared != null) {
+                return prepared.environment();
+            }
+        }
+        final Environment environment = new Environment(application, profiles, resolvedLabel, null, null);
+        for(int i = profiles.length - 1; i >= 0; i--) { // Most specific source first
+            final Prepared prepared = lookup(environments, profiles[i], resolvedLabel);
+            if(prepared != null) {
+                environment.add(prepared.source());
+            }
+        }
+        return environment;
+    }
+
+    // Index for the snapshot, rebuilding only the applications whose ApplicationConfig changed
+    private Index refresh(final ConfigSnapshot snapshot) {
+        final Index current = index;
+        if(current.snapshot() == snapshot) {
+            return current;
+        }
+        synchronized(this) {
+            if(index.snapshot() == snapshot) {
+                return index;
+            }
+            final Map<String, ApplicationEnvironments> applications = new HashMap<>();
+            snapshot.applications().forEach((name, config) -> {
+                final ApplicationEnvironments previous = index.applications().get(name);
+                applications.put(name, previous != null && previous.config() == config ? previous : prepare(config));
+            });
+            index = new Index(snapshot, Map.copyOf(applications));
+            return index;
+        }
+    }
+
+    private static ApplicationEnvironments prepare(final ApplicationConfig config) {
+        final Map<String, Map<String, Prepared>> profiles = new HashMap<>();
+        config.profiles().forEach((name, profile) -> {
+            final Map<String, Map<String, String>> byLabel = new HashMap<>();
+            for(int i = 0; i < profile.size(); i++) {   // Sorted by key, so each source lists its keys in order
+                byLabel.computeIfAbsent(profile.label(i), label -> new LinkedHashMap<>()).put(profile.key(i), profile.value(i));
+            }
+            final Map<String, Prepared> labels = new HashMap<>();
+            byLabel.forEach((label, properties) -> {
+                final PropertySource source = new PropertySource(config.name() + "-" + name + "@" + label, properties);
+                final Environment environment = new Environment(config.name(), new String[] {name}, label, profile.etag(), null);
+                environment.add(source);
+                labels.put(label, new Prepared(source, environment));
+            });
+            profiles.put(name, Map.copyOf(labels));
+        });
+        return new ApplicationEnvironments(config, Map.copyOf(profiles));
+    }
+
+    private static Prepared lookup(final ApplicationEnvironments environments, final String profile, final String label) {
+        if(environments == null) {
+            return null;
+        }
+        final Map<String, Prepared> labels = environments.profiles().get(profile);
+        return labels == null ? null : labels.get(label);
+    }
+
+    private record Index(ConfigSnapshot snapshot, Map<String, ApplicationEnvironments> applications) {}
+
+    private record ApplicationEnvironments(ApplicationConfig config, Map<String, Map<String, Prepared>> profiles) {}
+
+    private record Prepared(PropertySource source, Environment environment) {}
+}
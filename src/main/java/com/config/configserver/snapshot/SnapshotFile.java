@@ -0,0 +1,197 @@
+package com.config.configserver.snapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Binary copy of a whole ConfigSnapshot, so a node can serve from the last good load before its own load has run.
+ * Big-endian throughout:
+ * <pre>
+ * header   int magic 'CFGS', int version, long body length, long CRC32C of the body
+ * strings  int count, then per string: int UTF-8 length, bytes   (every name, label, key, value and ETag, once)
+ * rows     int count, then per row: int key, int label, int value   (string numbers; each profile's rows together, sorted)
+ * bodies   int length, then each profile's pre-rendered JSON array
+ * index    int applications, then per application: int name, int ETag, int profiles,
+ *          then per profile: int name, int ETag, int first row, int rows, int body offset, int body length
+ * </pre>
+ * The file is memory-mapped and checked against its length and checksum before anything is decoded; a file that
+ * fails either is rejected whole. Reading it back renders and hashes nothing: profile JSON is copied out of the
+ * mapping, application JSON is joined from it, and both ETags are the stored ones.
+ * Writes go to a temporary file that is moved over the old one, so readers, including replicas sharing the file,
+ * never see a partial snapshot. Files are limited to 2 GB by the int offsets.
+ */
+public final class SnapshotFile {
+
+    static final int MAGIC = 0x43464753;    // CFGS
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 24;
+    private static final int ROW_BYTES = 12;
+
+    private SnapshotFile() {}
+
+    public static void write(final ConfigSnapshot snapshot, final Path path) throws IOException {
+        final Map<String, Integer> numbers = new HashMap<>();
+        final List<String> strings = new ArrayList<>();
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        final ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        final ByteArrayOutputStream bodies = new ByteArrayOutputStream();
+        final DataOutputStream indexOut = new DataOutputStream(index);
+        final DataOutputStream rowsOut = new DataOutputStream(rows);
+        int rowCount = 0;
+        indexOut.writeInt(snapshot.applications().size());
+        for(ApplicationConfig app : snapshot.applications().values()) {
+            indexOut.writeInt(number(app.name(), numbers, strings));
+            indexOut.writeInt(number(app.etag(), numbers, strings));
+            indexOut.writeInt(app.profiles().size());
+            for(ProfileConfig profile : app.profiles().values()) {
+                final byte[] json = profile.json();
+                indexOut.writeInt(number(profile.profile(), numbers, strings));
+                indexOut.writeInt(number(profile.etag(), numbers, strings));
+                indexOut.writeInt(rowCount);
+                indexOut.writeInt(profile.size());
+                indexOut.writeInt(bodies.size());
+                indexOut.writeInt(json.length);
+                bodies.write(json);
+                for(int i = 0; i < profile.size(); i++) {
+                    rowsOut.writeInt(number(profile.key(i), numbers, strings));
+                    rowsOut.writeInt(number(profile.label(i), numbers, strings));
+                    rowsOut.writeInt(number(profile.value(i), numbers, strings));
+                }
+                rowCount += profile.size();
+            }
+        }
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(index.size() + rows.size() + bodies.size() + 64 * strings.size());
+        final DataOutputStream bodyOut = new DataOutputStream(body);
+        bodyOut.writeInt(strings.size());
+        for(String string : strings) {
+            final byte[] bytes = string.getBytes(UTF_8);
+            bodyOut.writeInt(bytes.length);
+            bodyOut.write(bytes);
+        }
+        bodyOut.writeInt(rowCount);
+        rows.writeTo(bodyOut);
+        bodyOut.writeInt(bodies.size());
+        bodies.writeTo(bodyOut);
+        index.writeTo(bodyOut);
+        bodyOut.flush();
+
+        final byte[] content = body.toByteArray();
+        final CRC32C crc = new CRC32C();
+        crc.update(content);
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(content.length)
+                .putLong(crc.getValue())
+                .flip();
+
+        final Path target = path.toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        final Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try(final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                final ByteBuffer buffer = ByteBuffer.wrap(content);
+                while(header.hasRemaining()) {
+                    channel.write(header);
+                }
+                while(buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    public static ConfigSnapshot read(final Path path) throws IOException {
+        final MappedByteBuffer file;
+        try(final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(file.remaining() < HEADER_BYTES || file.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a config snapshot");
+        }
+        if(file.getInt(4) != VERSION) {
+            throw new IOException(path + " has snapshot version " + file.getInt(4) + ", expected " + VERSION);
+        }
+        final long length = file.getLong(8);
+        if(length != file.capacity() - HEADER_BYTES) {
+            throw new IOException(path + " is truncated: expected " + length + " bytes after the header, found " + (file.capacity() - HEADER_BYTES));
+        }
+        final CRC32C crc = new CRC32C();
+        crc.update(file.slice(HEADER_BYTES, (int) length));
+        if(crc.getValue() != file.getLong(16)) {
+            throw new IOException(path + " failed its checksum");
+        }
+        return decode(file.slice(HEADER_BYTES, (int) length));
+    }
+
+    private static ConfigSnapshot decode(final ByteBuffer body) {
+        final String[] strings = new String[body.getInt()];
+        for(int i = 0; i < strings.length; i++) {
+            final byte[] bytes = new byte[body.getInt()];
+            body.get(bytes);
+            strings[i] = new String(bytes, UTF_8);
+        }
+        final int rowCount = body.getInt();
+        final int rowsStart = body.position();
+        body.position(rowsStart + rowCount * ROW_BYTES);   // Rows are read through the index
+        final int bodiesLength = body.getInt();
+        final int bodiesStart = body.position();
+        body.position(bodiesStart + bodiesLength);
+        final int applications = body.getInt();
+        final Map<String, ApplicationConfig> result = new HashMap<>();
+        for(int a = 0; a < applications; a++) {
+            final String application = strings[body.getInt()];
+            final String applicationEtag = strings[body.getInt()];
+            final int profiles = body.getInt();
+            final TreeMap<String, ProfileConfig> configs = new TreeMap<>();
+            for(int p = 0; p < profiles; p++) {
+                final String profile = strings[body.getInt()];
+                final String etag = strings[body.getInt()];
+                final int first = body.getInt();
+                final int count = body.getInt();
+                final int bodyOffset = body.getInt();
+                final byte[] json = new byte[body.getInt()];
+                body.get(bodiesStart + bodyOffset, json);
+                final String[] keys = new String[count];
+                final String[] labels = new String[count];
+                final String[] values = new String[count];
+                for(int r = 0; r < count; r++) {
+                    final int offset = rowsStart + (first + r) * ROW_BYTES;
+                    keys[r] = strings[body.getInt(offset)];
+                    labels[r] = strings[body.getInt(offset + 4)];
+                    values[r] = strings[body.getInt(offset + 8)];
+                }
+                configs.put(profile, ProfileConfig.restored(application, profile, keys, labels, values, json, etag));
+            }
+            result.put(application, ApplicationConfig.restored(application, configs, applicationEtag));
+        }
+        return ConfigSnapshot.ofApplications(result);
+    }
+
+    private static int number(final String string, final Map<String, Integer> numbers, final List<String> strings) {
+        return numbers.computeIfAbsent(string, s -> {
+            strings.add(s);
+            return strings.size() - 1;
+        });
+    }
+}
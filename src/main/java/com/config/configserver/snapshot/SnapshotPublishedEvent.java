@@ -0,0 +1,7 @@
+package com.config.configserver.snapshot;
+
+/**
+ * Published by ConfigSnapshotStore after a new snapshot has been swapped in.
+ * previous is ConfigSnapshot.EMPTY for the first publish.
+ */
+public record SnapshotPublishedEvent(ConfigSnapshot previous, ConfigSnapshot current) {}
@@ -17,4 +17,33 @@ CREATE TABLE PROPERTIES (
  );
 
 INSERT INTO PROPERTIES (APPLICATION, PROFILE, LABEL, PROP_KEY, VALUE)
-VALUES ('test', 'dev', 'test', 'test', 'val');
\ No newline at end of file
+VALUES ('test', 'dev', 'test', 'test', 'val');
+
+--changeset liquibase:2
+CREATE TABLE SOURCE_DIGESTS (
+  APPLICATION       VARCHAR     NOT NULL,   -- Folder name
+  KIND              VARCHAR     NOT NULL,   -- 'file' or 'profile' (merged result)
+  NAME              VARCHAR     NOT NULL,   -- File name or profile name
+  SOURCE_SIZE       BIGINT      NOT NULL,   -- File bytes or profile row count
+  SOURCE_MODIFIED   BIGINT      NOT NULL,   -- File mtime (epoch millis), 0 for profiles
+  SOURCE_HASH       VARCHAR     NOT NULL,
+  PRIMARY KEY (APPLICATION, KIND, NAME)
+);
+
+--changeset liquibase:3 dbms:postgresql
+DELETE FROM PROPERTIES p   -- Keep the newest of any duplicate key, so the unique index can be built
+    USING PROPERTIES q
+    WHERE q.APPLICATION = p.APPLICATION AND q.PROFILE = p.PROFILE AND q.LABEL = p.LABEL AND q.PROP_KEY = p.PROP_KEY
+        AND q.id > p.id;
+CREATE UNIQUE INDEX PROPERTIES_KEY_IDX ON PROPERTIES (APPLICATION, PROFILE, LABEL, PROP_KEY);   -- Upserts conflict on it
+
+--changeset liquibase:4 dbms:h2
+ALTER TABLE PROPERTIES ALTER COLUMN APPLICATION VARCHAR NOT NULL;   -- TEXT is a CLOB on H2, which cannot be indexed
+ALTER TABLE PROPERTIES ALTER COLUMN PROFILE VARCHAR NOT NULL;
+ALTER TABLE PROPERTIES ALTER COLUMN LABEL VARCHAR NOT NULL;
+ALTER TABLE PROPERTIES ALTER COLUMN PROP_KEY VARCHAR NOT NULL;
+DELETE FROM PROPERTIES p
+    WHERE EXISTS (SELECT 1 FROM PROPERTIES q
+        WHERE q.APPLICATION = p.APPLICATION AND q.PROFILE = p.PROFILE AND q.LABEL = p.LABEL AND q.PROP_KEY = p.PROP_KEY
+            AND q.id > p.id);
+CREATE UNIQUE INDEX PROPERTIES_KEY_IDX ON PROPERTIES (APPLICATION, PROFILE, LABEL, PROP_KEY);
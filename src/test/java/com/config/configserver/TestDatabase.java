@@ -0,0 +1,36 @@
+package com.config.configserver;
+
+import liquibase.exception.LiquibaseException;
+import liquibase.integration.spring.SpringLiquibase;
+import org.h2.jdbcx.JdbcDataSource;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fresh in-memory H2 database per call, migrated with the application's Liquibase changelog
+ * (db/changelog/changelog.sql) so tests run against the same schema as the default profile.
+ */
+public final class TestDatabase {
+
+	private static final AtomicInteger DATABASES = new AtomicInteger();
+
+	private TestDatabase() {}
+
+	public static DataSource migrated() {
+		final JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:test" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+		dataSource.setUser("sa");
+		final SpringLiquibase liquibase = new SpringLiquibase();
+		liquibase.setDataSource(dataSource);
+		liquibase.setChangeLog("classpath:db/changelog/changelog.sql");
+		liquibase.setResourceLoader(new DefaultResourceLoader());
+		try {
+			liquibase.afterPropertiesSet();
+		} catch (LiquibaseException e) {
+			throw new IllegalStateException("Unable to migrate the test database", e);
+		}
+		return dataSource;
+	}
+}
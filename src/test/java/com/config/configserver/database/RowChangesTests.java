@@ -0,0 +1,52 @@
+package com.config.configserver.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RowChangesTests {
+
+	@Test
+	void diffInsertsUpdatesAndDeletesByKey() {
+		final List<Row> stored = List.of(
+				row("dev", "same", "1", "latest"),
+				row("dev", "changed", "1", "latest"),
+				row("dev", "removed", "1", "latest"));
+		final List<Row> loaded = List.of(
+				row("dev", "same", "1", "latest"),
+				row("dev", "changed", "2", "latest"),
+				row("dev", "added", "1", "latest"));
+
+		final RowChanges changes = RowChanges.diff(stored, loaded);
+		assertEquals(List.of(row("dev", "added", "1", "latest")), changes.inserted());
+		assertEquals(List.of(row("dev", "changed", "2", "latest")), changes.updated());
+		assertEquals(List.of(row("dev", "removed", "1", "latest")), changes.deleted());
+		assertEquals(3, changes.size());
+	}
+
+	@Test
+	void rowsAreMatchedOnProfileAndLabelToo() {
+		final List<Row> stored = List.of(row("dev", "key", "1", "latest"), row("tst", "key", "1", "latest"));
+		final List<Row> loaded = List.of(row("dev", "key", "1", "v1"), row("tst", "key", "1", "latest"));
+
+		final RowChanges changes = RowChanges.diff(stored, loaded);
+		assertEquals(List.of(row("dev", "key", "1", "v1")), changes.inserted());
+		assertEquals(List.of(), changes.updated());
+		assertEquals(List.of(row("dev", "key", "1", "latest")), changes.deleted());
+	}
+
+	@Test
+	void identicalRowsAndEmptySidesDiffAsExpected() {
+		final List<Row> rows = List.of(row("dev", "a", "1", "latest"), row("dev", "b", "2", "latest"));
+		assertTrue(RowChanges.diff(rows, rows).isEmpty());
+		assertEquals(rows, RowChanges.diff(List.of(), rows).inserted());
+		assertEquals(2, RowChanges.diff(rows, List.of()).deleted().size());
+		assertTrue(RowChanges.diff(List.of(), List.of()).isEmpty());
+	}
+
+	private static Row row(final String profile, final String key, final String value, final String label) {
+		return new Row("aService", profile, key, value, label);
+	}
+}
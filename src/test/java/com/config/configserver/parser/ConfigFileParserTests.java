@@ -0,0 +1,141 @@
+package com.config.configserver.parser;
+
+import com.config.configserver.service.ConfigLoadingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+// The streaming parser must give exactly what YamlPropertiesFactoryBean / PropertiesLoaderUtils give
+class ConfigFileParserTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void yamlMatchesYamlPropertiesFactoryBean() throws IOException {
+		assertSameAsLegacy("application.yml", """
+				spring:
+				  jpa: true
+				  run: False
+				  datasource:
+				    url: jdbc:postgresql://localhost/config
+				    pool: { min: 2, max: 0x10 }
+				empty:
+				blank: ''
+				tilde: ~
+				numbers: [1_000, -0o7, 010, 0b101, 1.5e3, -.inf, .NaN, 09]
+				switches: [yes, No, on, OFF]
+				list:
+				  - a
+				  - [b, c]
+				  - []
+				  - name: d
+				    value: "quoted: text"
+				  -
+				nothing: []
+				nested: {}
+				"[bracketed]": x
+				dotted.key: y
+				literal: |
+				  line one
+				  line two
+				folded: >
+				  folded
+				  text
+				---
+				spring:
+				  run: overridden
+				---
+				""");
+	}
+
+	@Test
+	void propertiesMatchPropertiesLoaderUtils() throws IOException {
+		assertSameAsLegacy("application.properties", """
+				# comment
+				! also a comment
+				test.property = http://url.com
+				spring.jpa:true
+				spaced   value with spaces  \s
+				continued = first \\
+				    second \\
+				    third
+				escaped\\=key = \\t\\u00e9\\n
+				empty
+				   indented=yes
+				""");
+	}
+
+	@Test
+	void unsupportedYamlIsLeftToTheFullLoader() throws IOException {
+		final List<String> documents = List.of(
+				"base: &base\n  a: 1\nchild:\n  <<: *base\n  b: 2\n",
+				"created: 2001-12-14\n",
+				"tagged: !!int '7'\n",
+				"1: one\n",
+				"sexagesimal: 1:30\n",
+				"- just\n- a list\n");
+		final ConfigLoadingService loader = new ConfigLoadingService(new SimpleMeterRegistry(), ConfigLoadingService.LOCATION);
+		for(String document : documents) {
+			final Path file = Files.writeString(dir.resolve("application.yml"), document, UTF_8);
+			assertFalse(ConfigFileParser.parse(file, new HashMap<>()), document);
+			assertEquals(legacy(file), loader.loadPropertiesFromPath(file), document);
+		}
+	}
+
+	@Test
+	void sampleConfigurationsMatch() throws IOException {
+		final List<Path> files;
+		try(final Stream<Path> walk = Files.walk(Paths.get(ConfigLoadingService.LOCATION))) {
+			files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+		for(Path file : files) {
+			final Map<String, String> parsed = new HashMap<>();
+			assertTrue(ConfigFileParser.parse(file, parsed), file.toString());
+			assertEquals(legacy(file), parsed, file.toString());
+		}
+	}
+
+	private void assertSameAsLegacy(final String name, final String content) throws IOException {
+		final Path file = dir.resolve(name);
+		Files.writeString(file, content, name.endsWith(".properties") ? ISO_8859_1 : UTF_8);
+		final Map<String, String> parsed = new HashMap<>();
+		assertTrue(ConfigFileParser.parse(file, parsed));
+		assertEquals(legacy(file), parsed);
+	}
+
+	// What ConfigLoadingService produced before the streaming parser
+	private static Map<String, String> legacy(final Path file) throws IOException {
+		final Properties properties;
+		if(file.toString().endsWith(".properties")) {
+			properties = PropertiesLoaderUtils.loadProperties(new FileSystemResource(file));
+		} else {
+			final YamlPropertiesFactoryBean factory = new YamlPropertiesFactoryBean();
+			factory.setResources(new FileSystemResource(file));
+			properties = factory.getObject();
+		}
+		final Map<String, String> result = new HashMap<>();
+		for(Object key : properties.keySet()) {
+			result.put(key.toString(), properties.get(key).toString());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,102 @@
+package com.config.configserver.service;
+
+import com.config.configserver.TestDatabase;
+import com.config.configserver.database.Row;
+import com.config.configserver.database.RowChanges;
+import com.config.configserver.snapshot.ConfigSnapshotStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigBatchServiceTests {
+
+	private static final List<ConfigKey> LOOKUPS = List.of(
+			ConfigKey.of("aService"),
+			ConfigKey.of("aService", "dev"),
+			ConfigKey.of("aService", "dev", "test.property"),
+			ConfigKey.of("anotherService", "tst"),
+			ConfigKey.of("aService", "prd"),
+			ConfigKey.of("aService", "dev", "missing"),
+			ConfigKey.of("missingService"),
+			new ConfigKey("aService", null, "test.property"),
+			new ConfigKey(null, null, null));
+
+	private ConfigSnapshotStore store;
+	private ConfigBatchService batch;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		final ConfigDatabaseService database = new ConfigDatabaseService(TestDatabase.migrated(), new SimpleMeterRegistry(), 500, 256, 8, 250, 262144);
+		database.applyChanges(new RowChanges(List.of(
+				new Row("aService", "dev", "test.property", "http://url-dev.com", "latest"),
+				new Row("aService", "dev", "test.property", "http://url-dev-v1.com", "v1"),
+				new Row("aService", "dev", "spring.run", "true", "latest"),
+				new Row("aService", "tst", "test.property", "http://url-tst.com", "latest"),
+				new Row("anotherService", "tst", "unicode", "café ☃", "latest"),
+				new Row("unrequestedService", "dev", "key", "value", "latest")), List.of(), List.of()));
+		store = new ConfigSnapshotStore(database, event -> {}, "snapshot", "", false, 1000);
+		batch = new ConfigBatchService(store, database);
+	}
+
+	@Test
+	void databaseAndSnapshotAnswerTheSameBatch() throws Exception {
+		assertFalse(store.isServing());
+		final byte[] fromDatabase = write(LOOKUPS);
+		store.rebuild();
+		assertTrue(store.isServing());
+		final byte[] fromSnapshot = write(LOOKUPS);
+
+		assertArrayEquals(fromSnapshot, fromDatabase);
+		final JsonNode results = new ObjectMapper().readTree(fromSnapshot).get("results");
+		assertEquals(List.of(200, 200, 200, 200, 404, 404, 404, 400, 400), statuses(results));
+		assertEquals(4, results.get(0).get("config").size());
+		assertEquals(3, results.get(1).get("config").size());
+		assertEquals(2, results.get(2).get("config").size());
+		assertEquals("café ☃", results.get(3).get("config").get(0).get("value").asText());
+		assertEquals(0, results.get(4).get("config").size());
+		assertFalse(results.get(7).has("config"));
+	}
+
+	@Test
+	void batchOfOnlyInvalidLookupsSkipsTheDatabase() throws Exception {
+		final ConfigDatabaseService noDatabase = new ConfigDatabaseService(null, new SimpleMeterRegistry(), 500, 256, 8, 250, 262144);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ConfigBatchService(store, noDatabase).writeBatch(List.of(new ConfigKey(null, "dev", null)), out);
+		final JsonNode results = new ObjectMapper().readTree(out.toByteArray()).get("results");
+		assertEquals(List.of(400), statuses(results));
+	}
+
+	@Test
+	void nullLookupsAreInvalid() throws Exception {
+		final List<ConfigKey> lookups = Arrays.asList(null, ConfigKey.of("aService", "dev", "test.property"), null);
+		final byte[] fromDatabase = write(lookups);
+		store.rebuild();
+		final byte[] fromSnapshot = write(lookups);
+
+		assertArrayEquals(fromSnapshot, fromDatabase);
+		final JsonNode results = new ObjectMapper().readTree(fromSnapshot).get("results");
+		assertEquals(List.of(400, 200, 400), statuses(results));
+		assertTrue(results.get(0).get("application").isNull());
+	}
+
+	private byte[] write(final List<ConfigKey> lookups) throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		batch.writeBatch(lookups, out);
+		return out.toByteArray();
+	}
+
+	private static List<Integer> statuses(final JsonNode results) {
+		final List<Integer> statuses = new ArrayList<>();
+		results.forEach(result -> statuses.add(result.get("status").asInt()));
+		return statuses;
+	}
+}
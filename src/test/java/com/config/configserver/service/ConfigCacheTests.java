@@ -0,0 +1,165 @@
+package com.config.configserver.service;
+
+import com.config.configserver.exception.DatabaseBusyException;
+import com.config.configserver.exception.ResultNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigCacheTests {
+
+	private static final int CALLERS = 8;
+
+	// Holds every query until released, and counts them
+	private static final class BlockingDatabase extends ConfigDatabaseService {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger queries = new AtomicInteger();
+		final boolean found;
+
+		BlockingDatabase(final boolean found) {
+			super(null, new SimpleMeterRegistry(), 500, 256, 8, 250, 262144);
+			this.found = found;
+		}
+
+		@Override
+		public void streamConfiguration(final OutputStream out, final String sql, final String... params)
+				throws IOException, ResultNotFoundException {
+			queries.incrementAndGet();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			if(!found) {
+				throw new ResultNotFoundException(String.join("/", params));
+			}
+			out.write("[]".getBytes(UTF_8));
+		}
+	}
+
+	@Test
+	void concurrentMissesShareOneQuery() throws Exception {
+		final BlockingDatabase database = new BlockingDatabase(true);
+		final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		final ConfigCache cache = new ConfigCache(database, registry, 100, 5000, 1024, 5000);
+		final ConfigKey key = ConfigKey.of("aService", "dev");
+
+		final List<Future<byte[]>> results = callConcurrently(database, () -> cache.fetchConfiguration(key, () -> fail("no overflow")));
+		for(Future<byte[]> result : results) {
+			assertEquals("[]", new String(result.get(), UTF_8));
+		}
+		assertEquals(1, database.queries.get());
+		assertEquals(CALLERS - 1, registry.get("config.cache.coalesced").counter().count());
+	}
+
+	@Test
+	void followersShareNotFound() throws Exception {
+		final BlockingDatabase database = new BlockingDatabase(false);
+		final ConfigCache cache = new ConfigCache(database, new SimpleMeterRegistry(), 100, 5000, 1024, 5000);
+		final ConfigKey key = ConfigKey.of("missing", "dev");
+
+		for(Future<byte[]> result : callConcurrently(database, () -> cache.fetchConfiguration(key, () -> fail("no overflow")))) {
+			final Exception e = assertThrows(Exception.class, result::get);
+			assertTrue(e.getCause() instanceof ResultNotFoundException);
+		}
+		assertEquals(1, database.queries.get());
+	}
+
+	@Test
+	void followersGiveUpAfterMaxWait() throws Exception {
+		final BlockingDatabase database = new BlockingDatabase(true);
+		final ConfigCache cache = new ConfigCache(database, new SimpleMeterRegistry(), 100, 5000, 1024, 50);
+		final ConfigKey key = ConfigKey.of("aService", "dev");
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		final Future<byte[]> leader = executor.submit(() -> cache.fetchConfiguration(key, () -> fail("no overflow")));
+		while(database.queries.get() == 0) {
+			Thread.sleep(5);
+		}
+
+		assertThrows(DatabaseBusyException.class, () -> cache.fetchConfiguration(key, () -> fail("no overflow")));
+		database.release.countDown();
+		assertEquals("[]", new String(leader.get(), UTF_8));
+		executor.shutdown();
+	}
+
+	@Test
+	void spilledResultLetsFollowersGoBeforeItIsWrittenOut() throws Exception {
+		final CountDownLatch spilled = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger queries = new AtomicInteger();
+		final ConfigDatabaseService database = new ConfigDatabaseService(null, new SimpleMeterRegistry(), 500, 256, 8, 250, 262144) {
+			@Override
+			public void streamConfiguration(final OutputStream out, final String sql, final String... params) throws IOException {
+				if(queries.incrementAndGet() > 1) {
+					out.write("[]".getBytes(UTF_8));
+					return;
+				}
+				out.write(new byte[2048]);  // Past maxEntryBytes, then a slow client holds the rest back
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+		};
+		final ConfigCache cache = new ConfigCache(database, new SimpleMeterRegistry(), 100, 5000, 1024, 5000);
+		final ConfigKey key = ConfigKey.of("aService", "dev");
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		final Future<byte[]> leader = executor.submit(() -> cache.fetchConfiguration(key, () -> {
+			spilled.countDown();
+			return new ByteArrayOutputStream();
+		}));
+		spilled.await();
+
+		// The leader is still writing; the follower queries for itself rather than waiting on it
+		assertEquals("[]", new String(cache.fetchConfiguration(key, () -> fail("no overflow")), UTF_8));
+		assertEquals(2, queries.get());
+		release.countDown();
+		assertNull(leader.get());
+		executor.shutdown();
+	}
+
+	// Start CALLERS lookups and release the query once all but the one running it are waiting on it
+	private static List<Future<byte[]>> callConcurrently(final BlockingDatabase database, final Callable<byte[]> lookup)
+			throws InterruptedException {
+		final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+		final List<Thread> callers = new ArrayList<>();
+		final List<Future<byte[]>> results = new ArrayList<>();
+		for(int i = 0; i < CALLERS; i++) {
+			results.add(executor.submit(() -> {
+				synchronized(callers) {
+					callers.add(Thread.currentThread());
+				}
+				return lookup.call();
+			}));
+		}
+		while(waiting(callers) < CALLERS) {
+			Thread.sleep(5);
+		}
+		database.release.countDown();
+		executor.shutdown();
+		return results;
+	}
+
+	private static long waiting(final List<Thread> callers) {
+		synchronized(callers) {
+			return callers.stream()
+					.filter(t -> t.getState() == Thread.State.WAITING || t.getState() == Thread.State.TIMED_WAITING)
+					.count();
+		}
+	}
+}
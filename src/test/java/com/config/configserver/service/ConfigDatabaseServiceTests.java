@@ -0,0 +1,87 @@
+package com.config.configserver.service;
+
+import com.config.configserver.TestDatabase;
+import com.config.configserver.database.Row;
+import com.config.configserver.database.RowChanges;
+import com.config.configserver.exception.ResultNotFoundException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.config.configserver.service.SqlStatements.APP_PROFILE_SQL;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigDatabaseServiceTests {
+
+	@Test
+	void lookupsAreReadInFullBeforeTheClientIsWritten() throws Exception {
+		// One permit, and less heap than the result: the rows go through the temp file
+		final ConfigDatabaseService database = new ConfigDatabaseService(TestDatabase.migrated(), new SimpleMeterRegistry(), 500, 16, 1, 50, 256);
+		final List<Row> rows = new ArrayList<>();
+		for(int i = 0; i < 200; i++) {
+			rows.add(new Row("aService", "dev", "key." + i, "value-" + i, "latest"));
+		}
+		database.applyChanges(new RowChanges(rows, List.of(), List.of()));
+
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		final OutputStream client = new OutputStream() {
+			private boolean checked;
+
+			@Override
+			public void write(final int b) throws IOException {
+				write(new byte[] {(byte) b}, 0, 1);
+			}
+
+			@Override
+			public void write(final byte[] b, final int off, final int len) throws IOException {
+				if(!checked) {
+					checked = true;
+					try {   // Only possible if the lookup has given its permit back
+						database.fetchMatchingRows("aService", "dev", KeyPattern.of("key.1*"));
+					} catch (Exception e) {
+						throw new IOException(e);
+					}
+				}
+				body.write(b, off, len);
+			}
+		};
+		database.streamConfiguration(client, APP_PROFILE_SQL, "aService", "dev");
+		assertEquals(200, new ObjectMapper().readTree(body.toByteArray()).size());
+	}
+
+	@Test
+	void nothingIsWrittenForAMissingLookup() throws Exception {
+		final ConfigDatabaseService database = new ConfigDatabaseService(TestDatabase.migrated(), new SimpleMeterRegistry(), 500, 16, 1, 50, 256);
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		assertThrows(ResultNotFoundException.class, () -> database.streamConfiguration(body, APP_PROFILE_SQL, "aService", "prd"));
+		assertEquals(0, body.size());
+	}
+
+	@Test
+	void writesUpsertOnTheUniqueKey() throws Exception {
+		final ConfigDatabaseService database = new ConfigDatabaseService(TestDatabase.migrated(), new SimpleMeterRegistry(), 500, 16, 1, 50, 256);
+		final Row stored = new Row("aService", "dev", "key", "one", "api");
+		database.applyChanges(new RowChanges(List.of(stored), List.of(), List.of()));
+
+		final Row changed = new Row("aService", "dev", "key", "two", "api");
+		final Row added = new Row("aService", "dev", "added", "one", "api");
+		final RowChanges changes = database.applyWrites(List.of(changed, added), List.of(new Row("aService", "dev", "missing", null, "api")));
+		assertEquals(List.of(changed), changes.updated());
+		assertEquals(List.of(added), changes.inserted());
+		assertEquals(List.of(), changes.deleted());
+		assertEquals(List.of(added, changed), database.fetchApplicationRows("aService").stream()
+				.sorted(Comparator.comparing(Row::PROP_KEY)).toList());
+
+		// A second row under the same key is refused, so a racing insert cannot leave two values
+		assertThrows(SQLException.class, () -> database.applyChanges(new RowChanges(List.of(stored), List.of(), List.of())));
+		assertEquals(2, database.fetchApplicationRows("aService").size());
+	}
+}
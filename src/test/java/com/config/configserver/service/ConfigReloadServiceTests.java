@@ -0,0 +1,110 @@
+package com.config.configserver.service;
+
+import com.config.configserver.TestDatabase;
+import com.config.configserver.database.Row;
+import com.config.configserver.database.RowChanges;
+import com.config.configserver.snapshot.ConfigSnapshotStore;
+import com.config.configserver.snapshot.ProfileConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigReloadServiceTests {
+
+	@TempDir
+	Path root;
+
+	private Path app;
+	private ConfigDatabaseService database;
+	private ConfigSnapshotStore store;
+	private ConfigReloadService reload;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		app = Files.createDirectory(root.resolve("aService"));
+		write("application.yml", "base:\n  shared: one\ntest:\n  property: base\n");
+		write("application-dev.yml", "test:\n  property: dev\ndev:\n  only: x\n");
+		write("application-tst.yml", "test:\n  property: tst\n");
+		final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		database = new ConfigDatabaseService(TestDatabase.migrated(), registry, 500, 256, 8, 250, 262144);
+		store = new ConfigSnapshotStore(database, event -> {}, "snapshot", "", false, 1000);
+		reload = new ConfigReloadService(new ConfigLoadingService(registry, root.toString()), database,
+				new ConfigCache(database, registry, 100, 5000, 1024, 5000), store, new SourceDigestService(), registry, false, 500);
+	}
+
+	@Test
+	void firstLoadInsertsEveryProfile() throws Exception {
+		final RowChanges changes = reload.reloadApplication("aService");
+		assertEquals(5, changes.inserted().size());
+		assertEquals(Set.of(
+				row("dev", "base.shared", "one"), row("dev", "test.property", "dev"), row("dev", "dev.only", "x"),
+				row("tst", "base.shared", "one"), row("tst", "test.property", "tst")), stored());
+		assertNotNull(store.current().profile("aService", "dev"));
+	}
+
+	@Test
+	void editedFileWritesOnlyItsProfileDifferences() throws Exception {
+		reload.reloadApplication("aService");
+		database.applyChanges(new RowChanges(List.of(new Row("aService", "dev", "dev.only", "kept", "v1")), List.of(), List.of()));
+
+		write("application-dev.yml", "test:\n  property: dev2\ndev:\n  added: y\n");
+		final RowChanges changes = reload.reloadApplication("aService");
+
+		assertEquals(List.of(row("dev", "dev.added", "y")), changes.inserted());
+		assertEquals(List.of(row("dev", "test.property", "dev2")), changes.updated());
+		assertEquals(List.of(row("dev", "dev.only", "x")), changes.deleted());
+		assertEquals(Set.of(
+				row("dev", "base.shared", "one"), row("dev", "test.property", "dev2"), row("dev", "dev.added", "y"),
+				new Row("aService", "dev", "dev.only", "kept", "v1"),
+				row("tst", "base.shared", "one"), row("tst", "test.property", "tst")), stored());
+		final ProfileConfig dev = store.current().profile("aService", "dev");
+		assertEquals("dev2", dev.value(dev.lowerBound("test.property")));
+	}
+
+	@Test
+	void removedFilesAndFoldersDeleteOnlyLoaderRows() throws Exception {
+		reload.reloadApplication("aService");
+		database.applyChanges(new RowChanges(List.of(new Row("aService", "tst", "extra", "kept", "v1")), List.of(), List.of()));
+
+		Files.delete(app.resolve("application-dev.yml"));
+		assertEquals(3, reload.reloadApplication("aService").deleted().size());
+		assertEquals(Set.of(row("tst", "base.shared", "one"), row("tst", "test.property", "tst"),
+				new Row("aService", "tst", "extra", "kept", "v1")), stored());
+
+		Files.delete(app.resolve("application-tst.yml"));
+		Files.delete(app.resolve("application.yml"));
+		Files.delete(app);
+		assertEquals(2, reload.reloadApplication("aService").deleted().size());
+		assertEquals(Set.of(new Row("aService", "tst", "extra", "kept", "v1")), stored());
+	}
+
+	private Set<Row> stored() throws Exception {
+		return new HashSet<>(database.fetchApplicationRows("aService"));
+	}
+
+	// Each write moves the mtime on, so the change is seen however coarse the file system clock is
+	private void write(final String name, final String content) throws IOException {
+		final Path file = app.resolve(name);
+		final boolean existed = Files.exists(file);
+		final FileTime previous = existed ? Files.getLastModifiedTime(file) : null;
+		Files.writeString(file, content);
+		if(existed) {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(previous.toMillis() + 2000));
+		}
+	}
+
+	private static Row row(final String profile, final String key, final String value) {
+		return new Row("aService", profile, key, value, "latest");
+	}
+}
@@ -0,0 +1,82 @@
+package com.config.configserver.service;
+
+import com.config.configserver.api.WatchController;
+import com.config.configserver.database.Row;
+import com.config.configserver.snapshot.ConfigSnapshot;
+import com.config.configserver.snapshot.ConfigSnapshotStore;
+import com.config.configserver.snapshot.Representation;
+import com.config.configserver.snapshot.SnapshotPublishedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigWatchServiceTests {
+
+	private ConfigSnapshotStore store;
+	private ConfigWatchService watches;
+
+	@BeforeEach
+	void setUp() {
+		store = new ConfigSnapshotStore(null, event -> watches.onSnapshotPublished((SnapshotPublishedEvent) event),
+				"snapshot", "", false, 1000);
+		watches = new ConfigWatchService(store, new SimpleMeterRegistry(), 60000);
+		store.publish(ConfigSnapshot.of(List.of(row("1"))));
+	}
+
+	@Test
+	void gzipAndCborEtagsWaitForAChange() {
+		final WatchController controller = new WatchController(watches);
+		final String etag = store.current().etag(ConfigKey.of("aService", "dev"));
+		final List<DeferredResult<ResponseEntity<byte[]>>> waiting = new ArrayList<>();
+		for(Representation representation : Representation.values()) {
+			final DeferredResult<ResponseEntity<byte[]>> watch =
+					controller.watchConfig("aService", "dev", "\"" + representation.etag(etag) + "\"", 30000);
+			assertFalse(watch.hasResult(), representation.name());
+			waiting.add(watch);
+		}
+		assertTrue(controller.watchConfig("aService", "dev", "\"stale-gzip\"", 30000).hasResult());
+
+		store.publish(ConfigSnapshot.of(List.of(row("2"))));
+		for(DeferredResult<ResponseEntity<byte[]>> watch : waiting) {
+			assertEquals(HttpStatus.OK, status(watch));
+		}
+	}
+
+	@Test
+	void nonPositiveTimeoutsStillExpire() {
+		for(long timeout : new long[] {0, -1, Long.MIN_VALUE}) {
+			assertEquals(1, watches.timeoutFor(timeout));
+		}
+		assertEquals(30000, watches.timeoutFor(30000));
+		assertEquals(60000, watches.timeoutFor(Long.MAX_VALUE));
+	}
+
+	@Test
+	void databaseServingAnswersStaleWatchesStraightAway() {
+		final ConfigSnapshotStore database = new ConfigSnapshotStore(null, event -> {}, "database", "", false, 1000);
+		final ConfigWatchService service = new ConfigWatchService(database, new SimpleMeterRegistry(), 60000);
+		assertFalse(service.watch(ConfigKey.of("aService", "dev"), "stale", 30000).hasResult());   // Nothing published yet
+
+		database.publish(ConfigSnapshot.of(List.of(row("1"))));
+		assertFalse(database.isServing());
+		assertEquals(HttpStatus.OK, status(service.watch(ConfigKey.of("aService", "dev"), "stale", 30000)));
+		assertFalse(service.watch(ConfigKey.of("aService", "dev"), database.current().etag(ConfigKey.of("aService", "dev")), 30000).hasResult());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static HttpStatus status(final DeferredResult<ResponseEntity<byte[]>> result) {
+		return ((ResponseEntity<byte[]>) result.getResult()).getStatusCode();
+	}
+
+	private static Row row(final String value) {
+		return new Row("aService", "dev", "key", value, "latest");
+	}
+}
@@ -0,0 +1,158 @@
+package com.config.configserver.service;
+
+import com.config.configserver.TestDatabase;
+import com.config.configserver.api.ConfigWriteController;
+import com.config.configserver.database.Row;
+import com.config.configserver.database.RowChanges;
+import com.config.configserver.snapshot.ConfigSnapshotStore;
+import com.config.configserver.snapshot.ProfileConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.config.configserver.service.ConfigLoadingService.DEFAULT_LABEL;
+import static com.config.configserver.service.ConfigWriteService.API_LABEL;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigWriteServiceTests {
+
+	// Records each transaction; the first one waits until released so later writes queue up behind it
+	private static final class RecordingDatabase extends ConfigDatabaseService {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<List<Row>> upserts = new ArrayList<>();
+		final List<List<Row>> deletes = new ArrayList<>();
+
+		RecordingDatabase() {
+			super(null, new SimpleMeterRegistry(), 500, 256, 8, 250, 262144);
+		}
+
+		@Override
+		public RowChanges applyWrites(final List<Row> upserts, final List<Row> deletes) {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			this.upserts.add(upserts);
+			this.deletes.add(deletes);
+			return new RowChanges(upserts, List.of(), deletes);
+		}
+
+		@Override
+		public List<Row> fetchApplicationRows(final String application) {
+			return List.of(new Row(application, "dev", "key", "value", "latest"));
+		}
+	}
+
+	@Test
+	void writesQueuedDuringACommitShareTheNextOne() throws Exception {
+		final RecordingDatabase database = new RecordingDatabase();
+		final ConfigSnapshotStore store = new ConfigSnapshotStore(database, event -> {}, "snapshot", "", false, 1000);
+		final ConfigCache cache = new ConfigCache(database, new SimpleMeterRegistry(), 100, 5000, 1024, 5000);
+		final ConfigWriteService service = new ConfigWriteService(database, cache, store, new SimpleMeterRegistry(), 100, 5000);
+		service.start();
+		try {
+			final CompletableFuture<Void> first = service.write(List.of(row("a", "1")));
+			assertTrue(database.started.await(5, TimeUnit.SECONDS));
+			final List<CompletableFuture<Void>> queued = List.of(
+					service.write(List.of(row("b", "1"))),
+					service.write(List.of(row("b", "2"), row("c", "1"))),
+					service.write(List.of(row("c", null))));
+			database.release.countDown();
+			first.get(5, TimeUnit.SECONDS);
+			for(CompletableFuture<Void> write : queued) {
+				write.get(5, TimeUnit.SECONDS);
+			}
+
+			assertEquals(2, database.upserts.size());
+			assertEquals(List.of(row("b", "2")), database.upserts.get(1));
+			assertEquals(List.of(row("c", null)), database.deletes.get(1));
+			assertTrue(store.isServing());
+			assertNotNull(store.current().profile("aService", "dev"));
+		} finally {
+			service.stop();
+		}
+	}
+
+	@Test
+	void writesQueuedAtShutdownFail() throws Exception {
+		final RecordingDatabase database = new RecordingDatabase();
+		final ConfigSnapshotStore store = new ConfigSnapshotStore(database, event -> {}, "snapshot", "", false, 1000);
+		final ConfigCache cache = new ConfigCache(database, new SimpleMeterRegistry(), 100, 5000, 1024, 5000);
+		final ConfigWriteService service = new ConfigWriteService(database, cache, store, new SimpleMeterRegistry(), 100, 5000);
+		service.start();
+		final CompletableFuture<Void> committing = service.write(List.of(row("a", "1")));
+		assertTrue(database.started.await(5, TimeUnit.SECONDS));
+		final CompletableFuture<Void> queued = service.write(List.of(row("b", "1")));
+
+		service.stop();
+		final ExecutionException failure = assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+		assertTrue(failure.getCause() instanceof SQLTransientException);
+		final ExecutionException late = assertThrows(ExecutionException.class,
+				() -> service.write(List.of(row("c", "1"))).get(5, TimeUnit.SECONDS));
+		assertTrue(late.getCause() instanceof SQLTransientException);
+		committing.handle((done, e) -> null).get(5, TimeUnit.SECONDS);  // The commit under way is answered too, either way
+	}
+
+	@Test
+	void apiWritesSurviveAReloadOfTheirProfile(@TempDir final Path root) throws Exception {
+		final Path app = Files.createDirectory(root.resolve("aService"));
+		Files.writeString(app.resolve("application.yml"), "file:\n  key: base\n");
+		final Path dev = Files.writeString(app.resolve("application-dev.yml"), "file:\n  key: one\n");
+		final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		final ConfigDatabaseService database = new ConfigDatabaseService(TestDatabase.migrated(), registry, 500, 256, 8, 250, 262144);
+		final ConfigSnapshotStore store = new ConfigSnapshotStore(database, event -> {}, "snapshot", "", false, 1000);
+		final ConfigCache cache = new ConfigCache(database, registry, 100, 5000, 1024, 5000);
+		final ConfigReloadService reload = new ConfigReloadService(new ConfigLoadingService(registry, root.toString()),
+				database, cache, store, new SourceDigestService(), registry, false, 500);
+		final ConfigWriteService service = new ConfigWriteService(database, cache, store, registry, 100, 5000);
+		service.start();
+		try {
+			reload.reloadApplication("aService");
+			final ConfigWriteController api = new ConfigWriteController(service);
+			assertEquals(HttpStatus.BAD_REQUEST, status(api.putProperty("aService", "dev", "api.key", DEFAULT_LABEL, "lost")));
+			final DeferredResult<ResponseEntity<byte[]>> written = api.putProperty("aService", "dev", "api.key", API_LABEL, "kept");
+			for(int i = 0; i < 500 && !written.hasResult(); i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(HttpStatus.NO_CONTENT, status(written));
+
+			Files.writeString(dev, "file:\n  key: two\n");
+			Files.setLastModifiedTime(dev, FileTime.fromMillis(Files.getLastModifiedTime(dev).toMillis() + 2000));
+			assertEquals(1, reload.reloadApplication("aService").updated().size());
+			assertEquals(Set.of(new Row("aService", "dev", "file.key", "two", DEFAULT_LABEL),
+					new Row("aService", "dev", "api.key", "kept", API_LABEL)), new HashSet<>(database.fetchApplicationRows("aService")));
+			final ProfileConfig served = store.current().profile("aService", "dev");
+			assertEquals("kept", served.value(served.lowerBound("api.key")));
+		} finally {
+			service.stop();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static HttpStatus status(final DeferredResult<ResponseEntity<byte[]>> result) {
+		return ((ResponseEntity<byte[]>) result.getResult()).getStatusCode();
+	}
+
+	private static Row row(final String key, final String value) {
+		return new Row("aService", "dev", key, value, "latest");
+	}
+}
@@ -0,0 +1,24 @@
+package com.config.configserver.service;
+
+import com.config.configserver.exception.DatabaseBusyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseBulkheadTests {
+
+	@Test
+	void rejectsOnceFullForTheWaitLimit() throws Exception {
+		final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		final DatabaseBulkhead bulkhead = new DatabaseBulkhead(2, 20, registry);
+		bulkhead.acquire();
+		bulkhead.acquire();
+		assertThrows(DatabaseBusyException.class, bulkhead::acquire);
+		assertEquals(1, registry.get("config.db.bulkhead.rejected").counter().count());
+
+		bulkhead.release();
+		bulkhead.acquire();
+		assertEquals(1, registry.get("config.db.bulkhead.rejected").counter().count());
+	}
+}
@@ -0,0 +1,33 @@
+package com.config.configserver.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyPatternTests {
+
+	@Test
+	void prefixIsTheTextBeforeTheFirstWildcard() {
+		assertEquals("spring.datasource.", KeyPattern.of("spring.datasource.*").prefix());
+		assertTrue(KeyPattern.of("spring.datasource.*").prefixOnly());
+		assertEquals("spring.", KeyPattern.of("spring.*.url").prefix());
+		assertFalse(KeyPattern.of("spring.*.url").prefixOnly());
+		assertEquals("", KeyPattern.of("*.url").prefix());
+		assertEquals("server.port", KeyPattern.of("server.port").prefix());
+		assertFalse(KeyPattern.of("server.port").prefixOnly());
+	}
+
+	@Test
+	void globMatching() {
+		assertTrue(KeyPattern.of("spring.*.url").matches("spring.datasource.url"));
+		assertTrue(KeyPattern.of("spring.*.url").matches("spring.a.b.url"));
+		assertFalse(KeyPattern.of("spring.*.url").matches("spring.datasource.url2"));
+		assertTrue(KeyPattern.of("server.?ort").matches("server.port"));
+		assertFalse(KeyPattern.of("server.?ort").matches("server.ort"));
+		assertTrue(KeyPattern.of("*").matches(""));
+		assertTrue(KeyPattern.of("a*b*c").matches("aXbYbZc"));
+		assertFalse(KeyPattern.of("a*b*c").matches("aXbYbZ"));
+		assertTrue(KeyPattern.of("exact").matches("exact"));
+		assertFalse(KeyPattern.of("exact").matches("exactly"));
+	}
+}
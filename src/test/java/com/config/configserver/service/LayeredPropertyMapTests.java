@@ -0,0 +1,43 @@
+package com.config.configserver.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LayeredPropertyMapTests {
+
+	private final Map<String, String> base = Map.of("a", "base-a", "b", "base-b", "c", "base-c");
+	private final Map<String, String> overrides = Map.of("b", "dev-b", "d", "dev-d");
+	private final LayeredPropertyMap layered = new LayeredPropertyMap(base, overrides);
+
+	@Test
+	void overridesWinOverBase() {
+		assertEquals("base-a", layered.get("a"));
+		assertEquals("dev-b", layered.get("b"));
+		assertEquals("dev-d", layered.get("d"));
+		assertNull(layered.get("missing"));
+		assertTrue(layered.containsKey("c"));
+		assertFalse(layered.containsKey("missing"));
+	}
+
+	@Test
+	void matchesAFullCopy() {
+		final Map<String, String> copy = new HashMap<>(base);
+		copy.putAll(overrides);
+		assertEquals(4, layered.size());
+		assertEquals(copy, layered);
+		assertEquals(copy, layered.compact());
+		final Map<String, String> visited = new HashMap<>();
+		layered.forEach(visited::put);
+		assertEquals(copy, visited);
+	}
+
+	@Test
+	void isReadOnly() {
+		assertThrows(UnsupportedOperationException.class, () -> layered.put("a", "changed"));
+		assertThrows(UnsupportedOperationException.class, () -> layered.entrySet().iterator().next().setValue("changed"));
+	}
+}
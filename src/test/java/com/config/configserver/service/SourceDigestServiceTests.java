@@ -0,0 +1,115 @@
+package com.config.configserver.service;
+
+import com.config.configserver.TestDatabase;
+import com.config.configserver.database.Row;
+import com.config.configserver.database.SourceDigest;
+import com.config.configserver.snapshot.ConfigSnapshotStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+
+import static com.config.configserver.database.SourceDigest.FILE;
+import static com.config.configserver.database.SourceDigest.PROFILE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceDigestServiceTests {
+
+	private final SourceDigestService digests = new SourceDigestService();
+
+	@TempDir
+	Path root;
+
+	@Test
+	void unchangedFileKeepsItsStoredHashWithoutBeingRead() throws IOException {
+		final Path file = Files.writeString(root.resolve("application-dev.yml"), "a: 1\n");
+		final SourceDigest stored = new SourceDigest("aService", FILE, "application-dev.yml",
+				Files.size(file), Files.getLastModifiedTime(file).toMillis(), "stored-hash");
+
+		final List<SourceDigest> files = digests.fileDigests("aService", List.of(file), List.of(stored));
+		assertEquals(List.of(stored), files);
+		assertTrue(digests.sameFiles(files, List.of(stored)));
+	}
+
+	@Test
+	void changedMtimeWithTheSameContentIsRehashedButNotChanged() throws IOException {
+		final Path file = Files.writeString(root.resolve("application-dev.yml"), "a: 1\n");
+		final List<SourceDigest> stored = digests.fileDigests("aService", List.of(file), List.of());
+		Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+
+		final List<SourceDigest> files = digests.fileDigests("aService", List.of(file), stored);
+		assertFalse(digests.sameFiles(files, stored));
+		assertTrue(digests.sameContent(files, stored));
+		assertEquals(stored.get(0).HASH(), files.get(0).HASH());
+
+		Files.writeString(file, "a: 2\n");
+		assertFalse(digests.sameContent(digests.fileDigests("aService", List.of(file), stored), stored));
+	}
+
+	@Test
+	void addedOrRemovedFilesAreNotTheSameContent() throws IOException {
+		final Path dev = Files.writeString(root.resolve("application-dev.yml"), "a: 1\n");
+		final Path tst = Files.writeString(root.resolve("application-tst.yml"), "a: 1\n");
+		final List<SourceDigest> stored = digests.fileDigests("aService", List.of(dev), List.of());
+		assertFalse(digests.sameContent(digests.fileDigests("aService", List.of(dev, tst), stored), stored));
+		assertFalse(digests.sameContent(List.of(), stored));
+	}
+
+	@Test
+	void profileDigestsIgnoreRowOrderAndNameChangedProfiles() {
+		final List<SourceDigest> stored = digests.profileDigests("aService", List.of(
+				row("dev", "a", "1"), row("dev", "b", "2"), row("tst", "a", "1")));
+		assertEquals(stored, digests.profileDigests("aService", List.of(
+				row("tst", "a", "1"), row("dev", "b", "2"), row("dev", "a", "1"))));
+
+		final List<SourceDigest> edited = digests.profileDigests("aService", List.of(
+				row("dev", "a", "1"), row("dev", "b", "3"), row("prd", "a", "1")));
+		assertEquals(Set.of("dev", "tst", "prd"), digests.changedProfiles(edited, stored));
+		assertEquals(Set.of(), digests.changedProfiles(stored, stored));
+		assertNull(digests.changedProfiles(edited, List.of()));
+	}
+
+	@Test
+	void restartWritesOnlyTheProfilesWhoseMergedRowsChanged() throws Exception {
+		final Path app = Files.createDirectory(root.resolve("aService"));
+		final Path base = Files.writeString(app.resolve("application.yml"), "shared: one\nbase: one\n");
+		Files.writeString(app.resolve("application-dev.yml"), "shared: dev\n");
+		Files.writeString(app.resolve("application-tst.yml"), "tst: one\n");
+		final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		final ConfigDatabaseService database = new ConfigDatabaseService(TestDatabase.migrated(), registry, 500, 256, 8, 250, 262144);
+		final ConfigReloadService loader = new ConfigReloadService(new ConfigLoadingService(registry, root.toString()), database,
+				new ConfigCache(database, registry, 100, 5000, 1024, 5000),
+				new ConfigSnapshotStore(database, event -> {}, "snapshot", "", false, 1000), digests, registry, false, 500);
+		loader.apply(loader.prepare(app, database.fetchDigests("aService")));
+		assertEquals(2, digests.ofKind(database.fetchDigests("aService"), PROFILE).size());
+
+		// Unchanged: nothing to parse or write
+		assertNull(loader.prepare(app, database.fetchDigests("aService")));
+
+		// Touched, not edited: only the stored file digests are refreshed
+		final Path dev = app.resolve("application-dev.yml");
+		Files.setLastModifiedTime(dev, FileTime.fromMillis(Files.getLastModifiedTime(dev).toMillis() + 2000));
+		final ConfigReloadService.PendingSync touched = loader.prepare(app, database.fetchDigests("aService"));
+		assertEquals(Set.of(), touched.changedProfiles());
+		assertTrue(loader.apply(touched).isEmpty());
+		assertNull(loader.prepare(app, database.fetchDigests("aService")));
+
+		// A base key dev overrides: the file changed but only tst's merged rows did
+		Files.writeString(base, "shared: two\nbase: one\n");
+		Files.setLastModifiedTime(base, FileTime.fromMillis(Files.getLastModifiedTime(base).toMillis() + 2000));
+		final ConfigReloadService.PendingSync pending = loader.prepare(app, database.fetchDigests("aService"));
+		assertEquals(Set.of("tst"), pending.changedProfiles());
+		assertEquals(List.of(row("tst", "shared", "two")), loader.apply(pending).updated());
+		assertNull(loader.prepare(app, database.fetchDigests("aService")));
+	}
+
+	private static Row row(final String profile, final String key, final String value) {
+		return new Row("aService", profile, key, value, "latest");
+	}
+}
@@ -0,0 +1,125 @@
+package com.config.configserver.snapshot;
+
+import com.config.configserver.database.Row;
+import com.config.configserver.database.RowChanges;
+import com.config.configserver.service.ConfigDatabaseService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeLogTests {
+
+	@Test
+	void changesAfterARevisionKeepTheLatestPerKey() {
+		final ChangeLog log = new ChangeLog(100);
+		final Revision start = log.reset();
+		final Revision first = log.append(new RowChanges(List.of(row("a", "1"), row("b", "1")), List.of(), List.of()));
+		final Revision second = log.append(new RowChanges(List.of(), List.of(row("a", "2")), List.of(row("b", null))));
+		assertTrue(first.number() > start.number() && second.number() > first.number());
+		assertEquals(start.epoch(), second.epoch());
+
+		assertEquals(List.of(new ChangeLog.Change(second.number(), "a", "latest", "2"), new ChangeLog.Change(second.number(), "b", "latest", null)),
+				log.changes("aService", "dev", first, second));
+		assertEquals(List.of(new ChangeLog.Change(first.number(), "a", "latest", "1"), new ChangeLog.Change(first.number(), "b", "latest", "1")),
+				log.changes("aService", "dev", start, first));
+		assertEquals(List.of(), log.changes("aService", "dev", second, second));
+		assertEquals(List.of(), log.changes("aService", "tst", start, second));
+	}
+
+	@Test
+	void clientsBehindTheHeldChangesGetNull() {
+		final ChangeLog log = new ChangeLog(2);
+		final Revision start = log.reset();
+		final Revision first = log.append(new RowChanges(List.of(row("a", "1")), List.of(), List.of()));
+		log.append(new RowChanges(List.of(row("b", "1")), List.of(), List.of()));
+		final Revision third = log.append(new RowChanges(List.of(row("c", "1")), List.of(), List.of()));
+
+		assertNull(log.changes("aService", "dev", start, third));  // a was dropped
+		assertEquals(2, log.changes("aService", "dev", first, third).size());
+		assertNull(log.changes("aService", "dev", new Revision(third.epoch(), third.number() + 1), third));   // Not issued yet
+		assertNull(log.changes("aService", "dev", null, third));
+		final Revision reset = log.reset();
+		assertNotEquals(third.epoch(), reset.epoch());
+		assertNull(log.changes("aService", "dev", third, reset));
+		assertEquals(List.of(), log.changes("aService", "dev", reset, reset));
+	}
+
+	@Test
+	void aLogMustHoldAtLeastOneChange() {
+		assertThrows(IllegalArgumentException.class, () -> new ChangeLog(0));
+		final ChangeLog log = new ChangeLog(1);
+		final Revision start = log.reset();
+		final Revision first = log.append(new RowChanges(List.of(row("a", "1")), List.of(), List.of()));
+		final Revision second = log.append(new RowChanges(List.of(row("b", "1")), List.of(), List.of()));
+		assertNull(log.changes("aService", "dev", start, second));
+		assertEquals(1, log.changes("aService", "dev", first, second).size());
+	}
+
+	@Test
+	void revisionsOfAnotherLogAreNotAnsweredWithChanges() {
+		final ChangeLog restarted = new ChangeLog(100);
+		final ChangeLog other = new ChangeLog(100);
+		final Revision start = restarted.reset();
+		final Revision issued = other.reset();
+		other.append(new RowChanges(List.of(row("a", "1")), List.of(), List.of()));
+		final Revision current = restarted.append(new RowChanges(List.of(row("a", "2")), List.of(), List.of()));
+
+		// Same number, different epoch: a clock or counter collision cannot pass for this log's revision
+		assertEquals(issued.number(), start.number());
+		assertNull(restarted.changes("aService", "dev", issued, current));
+		assertNull(restarted.changes("aService", "dev", new Revision(issued.epoch(), current.number()), current));
+		assertEquals(1, restarted.changes("aService", "dev", start, current).size());
+	}
+
+	@Test
+	void revisionTokensRoundTrip() {
+		final Revision revision = new Revision(8071524603L, 42);
+		assertEquals("8071524603.42", revision.toString());
+		assertEquals(revision, Revision.parse(revision.toString()));
+		assertNull(Revision.parse("0"));
+		assertNull(Revision.parse("1700000000000"));
+		assertNull(Revision.parse("a.b"));
+		assertNull(Revision.parse("."));
+	}
+
+	@Test
+	void storeSendsChangesOrTheWholeProfile() throws Exception {
+		final List<Row> stored = new ArrayList<>(List.of(row("a", "1"), row("b", "1")));
+		final ConfigDatabaseService database = new ConfigDatabaseService(null, new SimpleMeterRegistry(), 500, 256, 8, 250, 262144) {
+			@Override
+			public List<Row> fetchApplicationRows(final String application) {
+				return List.copyOf(stored);
+			}
+		};
+		final ConfigSnapshotStore store = new ConfigSnapshotStore(database, event -> {}, "snapshot", "", false, 1000);
+		store.publish(ConfigSnapshot.of(stored));
+		final Revision published = store.current().revision();
+
+		stored.set(0, row("a", "2"));
+		stored.remove(1);
+		store.refresh(new RowChanges(List.of(), List.of(row("a", "2")), List.of(row("b", null))));
+		final Revision refreshed = store.current().revision();
+
+		assertEquals("{\"revision\":\"" + refreshed + "\",\"full\":false,"
+						+ "\"rows\":[{\"application\":\"aService\",\"profile\":\"dev\",\"label\":\"latest\",\"prop_key\":\"a\",\"value\":\"2\"}],"
+						+ "\"removed\":[{\"label\":\"latest\",\"prop_key\":\"b\"}]}",
+				new String(store.renderChanges("aService", "dev", published.toString()), StandardCharsets.UTF_8));
+		final String full = "{\"revision\":\"" + refreshed + "\",\"full\":true,"
+				+ "\"rows\":[{\"application\":\"aService\",\"profile\":\"dev\",\"label\":\"latest\",\"prop_key\":\"a\",\"value\":\"2\"}]}";
+		assertEquals(full, new String(store.renderChanges("aService", "dev", "0"), StandardCharsets.UTF_8));
+
+		// A restart (or any rebuild) starts a new epoch: the old revision gets the whole profile
+		store.publish(ConfigSnapshot.of(List.copyOf(stored)));
+		assertEquals(full.replace(refreshed.toString(), store.current().revision().toString()),
+				new String(store.renderChanges("aService", "dev", refreshed.toString()), StandardCharsets.UTF_8));
+	}
+
+	private static Row row(final String key, final String value) {
+		return new Row("aService", "dev", key, value, "latest");
+	}
+}
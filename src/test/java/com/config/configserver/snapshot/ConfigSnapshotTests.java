@@ -0,0 +1,117 @@
+package com.config.configserver.snapshot;
+
+import com.config.configserver.database.Row;
+import com.config.configserver.exception.ResultNotFoundException;
+import com.config.configserver.service.ConfigKey;
+import com.config.configserver.service.KeyPattern;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigSnapshotTests {
+
+	private final ConfigSnapshot snapshot = ConfigSnapshot.of(List.of(
+			new Row("aService", "dev", "test.property", "http://url-dev.com", "latest"),
+			new Row("aService", "dev", "spring.run", "true", "latest"),
+			new Row("aService", "tst", "test.property", "http://url-tst.com", "latest"),
+			new Row("anotherService", "dev", "spring.jpa", "false", "latest")
+	));
+
+	@Test
+	void profileRowsAreSortedByKey() {
+		final ProfileConfig dev = snapshot.profile("aService", "dev");
+		assertEquals(2, dev.size());
+		assertEquals("spring.run", dev.key(0));
+		assertEquals("test.property", dev.key(1));
+		assertEquals(4, snapshot.rowCount());
+	}
+
+	@Test
+	void rendersKeyLookup() throws ResultNotFoundException {
+		assertEquals(
+				"[{\"application\":\"aService\",\"profile\":\"dev\",\"label\":\"latest\",\"prop_key\":\"spring.run\",\"value\":\"true\"}]",
+				new String(snapshot.render(ConfigKey.of("aService", "dev", "spring.run")), UTF_8));
+	}
+
+	@Test
+	void applicationLookupCoversEveryProfile() throws ResultNotFoundException {
+		final String json = new String(snapshot.render(ConfigKey.of("aService")), UTF_8);
+		assertTrue(json.contains("http://url-dev.com"));
+		assertTrue(json.contains("http://url-tst.com"));
+		assertFalse(json.contains("anotherService"));
+		assertArrayEquals(ConfigJson.renderRows(List.of(   // Joined from the profiles, byte for byte a single render
+				new Row("aService", "dev", "spring.run", "true", "latest"),
+				new Row("aService", "dev", "test.property", "http://url-dev.com", "latest"),
+				new Row("aService", "tst", "test.property", "http://url-tst.com", "latest"))), json.getBytes(UTF_8));
+		assertArrayEquals("[]".getBytes(UTF_8), ConfigJson.joinArrays(List.of("[]".getBytes(UTF_8))));
+	}
+
+	@Test
+	void etagsAreTheContentHashOfTheRenderedJson() throws ResultNotFoundException {
+		// What the database path hashes, so switching serving source keeps every client's ETag
+		for(ConfigKey key : List.of(ConfigKey.of("aService"), ConfigKey.of("aService", "dev"), ConfigKey.of("aService", "dev", "spring.run"))) {
+			assertEquals(ContentHash.of(snapshot.render(key)), snapshot.etag(key), key.path());
+		}
+		assertEquals(ContentHash.of(ConfigJson.renderRows(List.of(new Row("aService", "dev", "spring.run", "true", "latest")))),
+				snapshot.etag(ConfigKey.of("aService", "dev", "spring.run")));
+		assertNull(snapshot.etag(ConfigKey.of("aService", "dev", "missing")));
+	}
+
+	@Test
+	void missingLookupsThrow() {
+		assertThrows(ResultNotFoundException.class, () -> snapshot.render(ConfigKey.of("missing")));
+		assertThrows(ResultNotFoundException.class, () -> snapshot.render(ConfigKey.of("aService", "prd")));
+		assertThrows(ResultNotFoundException.class, () -> snapshot.render(ConfigKey.of("aService", "dev", "missing")));
+	}
+
+	@Test
+	void representationsCarryTheSameRows() throws ResultNotFoundException, IOException {
+		for(ConfigKey key : List.of(ConfigKey.of("aService"), ConfigKey.of("aService", "dev"), ConfigKey.of("aService", "dev", "spring.run"))) {
+			final byte[] json = snapshot.render(key);
+			try(final GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(snapshot.render(key, Representation.JSON_GZIP)))) {
+				assertArrayEquals(json, gzip.readAllBytes());
+			}
+			assertEquals(new ObjectMapper().readTree(json),
+					new ObjectMapper(new CBORFactory()).readTree(snapshot.render(key, Representation.CBOR)));
+			assertEquals(snapshot.etag(key), snapshot.etag(key, Representation.JSON));
+			assertNotEquals(snapshot.etag(key), snapshot.etag(key, Representation.CBOR));
+		}
+		final ProfileConfig dev = snapshot.profile("aService", "dev");
+		assertSame(dev.body(Representation.JSON_GZIP), dev.body(Representation.JSON_GZIP));
+		assertSame(dev.body(Representation.CBOR), dev.body(Representation.CBOR));
+	}
+
+	@Test
+	void patternLookupsVisitOnlyTheMatchingSubtree() throws ResultNotFoundException {
+		final ConfigSnapshot tree = ConfigSnapshot.of(List.of(
+				new Row("aService", "dev", "server.port", "8080", "latest"),
+				new Row("aService", "dev", "spring.datasource.password", "secret", "latest"),
+				new Row("aService", "dev", "spring.datasource.url", "jdbc:h2:mem:a", "latest"),
+				new Row("aService", "dev", "spring.jpa.url", "none", "latest"),
+				new Row("aService", "dev", "spring.run", "true", "latest")
+		));
+		final ProfileConfig dev = tree.profile("aService", "dev");
+		final int from = dev.lowerBound("spring.datasource.");
+		assertEquals(1, from);
+		assertEquals(3, dev.prefixEnd(from, "spring.datasource."));
+
+		final String subtree = new String(tree.renderMatching("aService", "dev", KeyPattern.of("spring.datasource.*")), UTF_8);
+		assertTrue(subtree.contains("spring.datasource.password") && subtree.contains("spring.datasource.url"));
+		assertFalse(subtree.contains("spring.run"));
+
+		final String urls = new String(tree.renderMatching("aService", "dev", KeyPattern.of("spring.*.url")), UTF_8);
+		assertTrue(urls.contains("jdbc:h2:mem:a") && urls.contains("\"none\""));
+		assertFalse(urls.contains("secret"));
+
+		assertThrows(ResultNotFoundException.class, () -> tree.renderMatching("aService", "dev", KeyPattern.of("management.*")));
+		assertThrows(ResultNotFoundException.class, () -> tree.renderMatching("aService", "prd", KeyPattern.of("*")));
+	}
+}
@@ -0,0 +1,62 @@
+package com.config.configserver.snapshot;
+
+import com.config.configserver.database.Row;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RepresentationTests {
+
+	@Test
+	void jsonUnlessCborIsPreferred() {
+		assertEquals(Representation.JSON, Representation.negotiate(null, null));
+		assertEquals(Representation.JSON, Representation.negotiate("*/*", null));
+		assertEquals(Representation.JSON, Representation.negotiate("application/json, application/cbor", null));
+		assertEquals(Representation.JSON, Representation.negotiate("application/cbor;q=0.5, */*", null));
+		assertEquals(Representation.CBOR, Representation.negotiate("application/cbor", "gzip"));
+		assertEquals(Representation.CBOR, Representation.negotiate("application/cbor, application/json;q=0.9", null));
+		assertEquals(Representation.CBOR, Representation.negotiate("application/json;q=0, */*", null));
+	}
+
+	@Test
+	void gzipUnlessRefused() {
+		assertEquals(Representation.JSON_GZIP, Representation.negotiate(null, "gzip, deflate, br"));
+		assertEquals(Representation.JSON_GZIP, Representation.negotiate("application/json", "GZIP;q=0.5"));
+		assertEquals(Representation.JSON_GZIP, Representation.negotiate(null, "*"));
+		assertEquals(Representation.JSON, Representation.negotiate(null, "deflate"));
+		assertEquals(Representation.JSON, Representation.negotiate(null, "gzip;q=0"));
+		assertEquals(Representation.JSON, Representation.negotiate(null, "gzip; q=0.000, identity"));
+	}
+
+	@Test
+	void keyLookupsAreNotCompressed() {
+		assertEquals(Representation.JSON, Representation.JSON_GZIP.forKeyLookup());
+		assertEquals(Representation.CBOR, Representation.CBOR.forKeyLookup());
+		assertEquals("abc-gzip", Representation.JSON_GZIP.etag("abc"));
+		assertEquals("abc", Representation.JSON.etag("abc"));
+		for(Representation representation : Representation.values()) {
+			assertEquals("abc", Representation.baseEtag(representation.etag("abc")));
+		}
+		assertNull(Representation.baseEtag(null));
+	}
+
+	@Test
+	void streamedCborMatchesTheBufferedConversion() throws Exception {
+		final byte[] json = ConfigJson.renderRows(List.of(
+				new Row("aService", "dev", "spring.run", "true", "latest"),
+				new Row("aService", "dev", "unicode", "café ☃ \"quoted\"", "latest")));
+		for(int chunk : new int[] {1, 7, json.length}) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final OutputStream cbor = ConfigJson.cborEncoding(out);
+			for(int off = 0; off < json.length; off += chunk) {
+				cbor.write(json, off, Math.min(chunk, json.length - off));
+			}
+			cbor.flush();
+			assertArrayEquals(ConfigJson.toCbor(json), out.toByteArray(), "chunk " + chunk);
+		}
+	}
+}
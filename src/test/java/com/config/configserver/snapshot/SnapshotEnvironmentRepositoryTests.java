@@ -0,0 +1,64 @@
+package com.config.configserver.snapshot;
+
+import com.config.configserver.database.Row;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.config.environment.Environment;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotEnvironmentRepositoryTests {
+
+	private final ConfigSnapshotStore store = new ConfigSnapshotStore(null, event -> {}, "snapshot", "", false, 1000);
+	private final SnapshotEnvironmentRepository repository = new SnapshotEnvironmentRepository(store);
+
+	SnapshotEnvironmentRepositoryTests() {
+		store.publish(ConfigSnapshot.of(List.of(
+				new Row("aService", "dev", "test.property", "http://url-dev.com", "latest"),
+				new Row("aService", "dev", "spring.run", "true", "latest"),
+				new Row("aService", "dev", "test.property", "http://url-dev-v1.com", "v1"),
+				new Row("aService", "tst", "test.property", "http://url-tst.com", "latest")
+		)));
+	}
+
+	@Test
+	void singleProfileIsPrecomputedAndShared() {
+		final Environment environment = repository.findOne("aService", "dev", null);
+		assertSame(environment, repository.findOne("aService", "dev", "latest"));
+		assertEquals("latest", environment.getLabel());
+		assertEquals(1, environment.getPropertySources().size());
+		assertEquals(Map.of("spring.run", "true", "test.property", "http://url-dev.com"),
+				environment.getPropertySources().get(0).getSource());
+	}
+
+	@Test
+	void labelSelectsRows() {
+		assertEquals(Map.of("test.property", "http://url-dev-v1.com"),
+				repository.findOne("aService", "dev", "v1").getPropertySources().get(0).getSource());
+	}
+
+	@Test
+	void laterProfilesComeFirst() {
+		final Environment environment = repository.findOne("aService", "dev,tst", null);
+		assertEquals(2, environment.getPropertySources().size());
+		assertEquals("http://url-tst.com", environment.getPropertySources().get(0).getSource().get("test.property"));
+	}
+
+	@Test
+	void unknownLookupsAreEmpty() {
+		assertTrue(repository.findOne("missing", "dev", null).getPropertySources().isEmpty());
+		assertTrue(repository.findOne("aService", "prd", null).getPropertySources().isEmpty());
+		assertTrue(repository.findOne("aService", "dev", "v2").getPropertySources().isEmpty());
+	}
+
+	@Test
+	void reloadRebuildsOnlyTheChangedApplication() {
+		final Environment before = repository.findOne("aService", "tst", null);
+		store.publish(store.current().withApplication("anotherService",
+				List.of(new Row("anotherService", "dev", "spring.jpa", "false", "latest"))));
+		assertSame(before, repository.findOne("aService", "tst", null));
+		assertEquals(1, repository.findOne("anotherService", "dev", null).getPropertySources().size());
+	}
+}
@@ -0,0 +1,111 @@
+package com.config.configserver.snapshot;
+
+import com.config.configserver.database.Row;
+import com.config.configserver.database.RowChanges;
+import com.config.configserver.service.ConfigDatabaseService;
+import com.config.configserver.service.ConfigKey;
+import com.config.configserver.service.KeyPattern;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotFileTests {
+
+	@TempDir
+	Path dir;
+
+	private final ConfigSnapshot snapshot = ConfigSnapshot.of(List.of(
+			new Row("aService", "dev", "test.property", "http://url-dev.com", "latest"),
+			new Row("aService", "dev", "test.property", "http://url-dev-v1.com", "v1"),
+			new Row("aService", "dev", "spring.run", "true", "latest"),
+			new Row("aService", "tst", "test.property", "http://url-tst.com", "latest"),
+			new Row("anotherService", "dev", "unicode", "café ☃", "latest")
+	));
+
+	@Test
+	void roundTripServesTheSameResults() throws Exception {
+		final Path file = dir.resolve("config-snapshot.bin");
+		SnapshotFile.write(snapshot, file);
+		final ConfigSnapshot restored = SnapshotFile.read(file);
+		assertEquals(snapshot.rowCount(), restored.rowCount());
+		assertEquals(snapshot.applications().keySet(), restored.applications().keySet());
+		for(ConfigKey key : List.of(ConfigKey.of("aService"), ConfigKey.of("aService", "dev"),
+				ConfigKey.of("aService", "dev", "test.property"), ConfigKey.of("anotherService", "dev", "unicode"))) {
+			assertArrayEquals(snapshot.render(key), restored.render(key), key.path());
+			assertEquals(snapshot.etag(key), restored.etag(key), key.path());
+		}
+		final ProfileConfig dev = restored.profile("aService", "dev");
+		assertEquals(ContentHash.of(dev.json()), dev.etag());
+		assertEquals(ContentHash.of(restored.application("aService").json()), restored.application("aService").etag());
+		assertArrayEquals(snapshot.renderMatching("aService", "dev", KeyPattern.of("test.*")),
+				restored.renderMatching("aService", "dev", KeyPattern.of("test.*")));
+	}
+
+	@Test
+	void emptySnapshotRoundTrips() throws IOException {
+		final Path file = dir.resolve("empty.bin");
+		SnapshotFile.write(ConfigSnapshot.EMPTY, file);
+		assertTrue(SnapshotFile.read(file).applications().isEmpty());
+	}
+
+	@Test
+	void damagedFilesAreRejected() throws IOException {
+		final Path file = dir.resolve("config-snapshot.bin");
+		SnapshotFile.write(snapshot, file);
+		final byte[] bytes = Files.readAllBytes(file);
+
+		final byte[] flipped = bytes.clone();
+		flipped[bytes.length / 2] ^= 1;
+		assertThrows(IOException.class, () -> SnapshotFile.read(Files.write(dir.resolve("flipped.bin"), flipped)));
+
+		final byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+		assertThrows(IOException.class, () -> SnapshotFile.read(Files.write(dir.resolve("truncated.bin"), truncated)));
+
+		final byte[] version = bytes.clone();
+		version[7] = (byte) (SnapshotFile.VERSION + 1);
+		assertThrows(IOException.class, () -> SnapshotFile.read(Files.write(dir.resolve("version.bin"), version)));
+
+		assertThrows(IOException.class, () -> SnapshotFile.read(Files.write(dir.resolve("other.bin"), new byte[] {1, 2, 3})));
+	}
+
+	@Test
+	void storeRestoresWhatItSaved() throws Exception {
+		final List<Row> stored = new ArrayList<>(List.of(new Row("aService", "dev", "test.property", "one", "latest")));
+		final ConfigDatabaseService database = new ConfigDatabaseService(null, new SimpleMeterRegistry(), 500, 256, 8, 250, 262144) {
+			@Override
+			public List<Row> fetchAllRows() {
+				return stored;
+			}
+
+			@Override
+			public List<Row> fetchApplicationRows(final String application) {
+				return stored;
+			}
+		};
+		final String path = dir.resolve("store.bin").toString();
+		final ConfigSnapshotStore writer = new ConfigSnapshotStore(database, event -> {}, "snapshot", path, true, 1000);
+		writer.rebuild();
+		final ConfigSnapshotStore replica = new ConfigSnapshotStore(null, event -> {}, "snapshot", path, false, 1000);
+		assertTrue(replica.restore());
+		assertTrue(replica.isServing());
+		assertEquals(writer.current().etag(ConfigKey.of("aService")), replica.current().etag(ConfigKey.of("aService")));
+
+		// A committed write is in the file as soon as it is published
+		final Row written = new Row("aService", "dev", "written", "two", "api");
+		stored.add(written);
+		writer.refresh(new RowChanges(List.of(written), List.of(), List.of()));
+		assertTrue(replica.restore());
+		final ProfileConfig dev = replica.current().profile("aService", "dev");
+		assertEquals("two", dev.value(dev.lowerBound("written")));
+		assertFalse(new ConfigSnapshotStore(null, event -> {}, "snapshot", dir.resolve("missing.bin").toString(), true, 1000).restore());
+	}
+}